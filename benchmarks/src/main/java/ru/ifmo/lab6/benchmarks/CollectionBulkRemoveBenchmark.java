@@ -0,0 +1,99 @@
+package ru.ifmo.lab6.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Массовое удаление: remove_greater и remove_lower удаляют долю {@code removedShare} коллекции,
+ * {@code removeGreaterNothing} только просматривает коллекцию, ничего не удаляя.
+ * После каждого вызова удаленные элементы возвращаются (это время не измеряется).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollectionBulkRemoveBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"UNIFORM", "SKEWED"})
+    private PersonGenerator.Distribution distribution;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    @Param({"0.01"})
+    private double removedShare;
+
+    private CollectionManager manager;
+    private Person[] persons;
+    private int removed;
+    private Person greaterThan;
+    private Person lowerThan;
+    private Person greaterThanAll;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        persons = new PersonGenerator(distribution, 42).persons(size);
+        manager = Managers.create(persons, indexed);
+        removed = Math.max(1, (int) (size * removedShare));
+        greaterThan = withId(size - removed);
+        lowerThan = withId(removed + 1);
+        greaterThanAll = withId(Long.MAX_VALUE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void restore() {
+        TreeSet<Person> collection = manager.getCollection();
+        if (collection.size() == size) return;
+        for (int i = 0; i < removed; i++) {
+            restore(collection, persons[i]);
+            restore(collection, persons[size - 1 - i]);
+        }
+    }
+
+    @Benchmark
+    public String removeGreater() {
+        return manager.removeGreater(greaterThan);
+    }
+
+    @Benchmark
+    public String removeLower() {
+        return manager.removeLower(lowerThan);
+    }
+
+    @Benchmark
+    public String removeGreaterNothing() {
+        return manager.removeGreater(greaterThanAll);
+    }
+
+    private void restore(TreeSet<Person> collection, Person person) {
+        if (!collection.contains(person)) {
+            manager.applyPut(person);
+        }
+    }
+
+    private static Person withId(long id) {
+        Person person = new Person();
+        person.setId(id);
+        return person;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.ifmo.lab6.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.ifmo.lab6.model.Color;
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Читающие операции {@link CollectionManager}: info, average_of_height, count_by_hair_color,
+ * filter_less_than_hair_color и страница show. Каждая операция измеряется с построенными вторичными
+ * индексами и без них.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollectionQueryBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"UNIFORM", "SKEWED"})
+    private PersonGenerator.Distribution distribution;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private CollectionManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        manager = Managers.create(new PersonGenerator(distribution, 42).persons(size), indexed);
+    }
+
+    @Benchmark
+    public String info() {
+        return manager.getInfo();
+    }
+
+    @Benchmark
+    public double averageOfHeight() {
+        return manager.getAverageHeight();
+    }
+
+    @Benchmark
+    public long countByHairColor() {
+        return manager.countByHairColor(Color.BROWN);
+    }
+
+    @Benchmark
+    public TreeSet<Person> filterLessThanHairColor() {
+        return manager.filterLessThanHairColor(Color.WHITE);
+    }
+
+    /**
+     * Страница show из середины коллекции.
+     */
+    @Benchmark
+    public ArrayList<Person> showPage() {
+        return manager.getPage(size / 2, 1000);
+    }
+
+    /**
+     * Ключи всех страниц show, которые сервер возвращает вместе с первой страницей.
+     */
+    @Benchmark
+    public long[] showPageKeys() {
+        return manager.getPageKeys(1000);
+    }
+}
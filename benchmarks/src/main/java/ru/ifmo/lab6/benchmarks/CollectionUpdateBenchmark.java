@@ -0,0 +1,99 @@
+package ru.ifmo.lab6.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Изменения одного элемента: add, add_if_min, update и remove_by_id.
+ * <p>
+ * Чтобы размер коллекции не менялся от итерации к итерации, добавленный элемент удаляется,
+ * а удаленный возвращается в том же вызове, поэтому add и remove_by_id измеряются в паре с обратной операцией.
+ * Элементы выбираются по заранее сгенерированным случайным id.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollectionUpdateBenchmark {
+    private static final int RANDOM_IDS = 1 << 16;
+    private static final int TEMPLATES = 1 << 10;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"UNIFORM", "SKEWED"})
+    private PersonGenerator.Distribution distribution;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private CollectionManager manager;
+    private Person[] persons;
+    private Person[] templates;
+    private int[] ids;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        PersonGenerator generator = new PersonGenerator(distribution, 42);
+        persons = generator.persons(size);
+        manager = Managers.create(persons, indexed);
+        templates = new Person[TEMPLATES];
+        for (int i = 0; i < TEMPLATES; i++) {
+            templates[i] = generator.next();
+        }
+        ids = PersonGenerator.randomIds(size, RANDOM_IDS, 7);
+    }
+
+    @Benchmark
+    public long addAndRemove() {
+        Person person = PersonGenerator.copyOf(templates[cursor++ & (TEMPLATES - 1)]);
+        manager.add(person);
+        manager.removeById(person.getId());
+        return person.getId();
+    }
+
+    /**
+     * Новый элемент приходит от клиента с id 0, а элементы сравниваются по id,
+     * поэтому add_if_min сейчас всегда добавляет элемент.
+     */
+    @Benchmark
+    public String addIfMinAndRemove() {
+        Person person = PersonGenerator.copyOf(templates[cursor++ & (TEMPLATES - 1)]);
+        String result = manager.addIfMin(person);
+        if (person.getId() != 0) {
+            manager.removeById(person.getId());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String update() {
+        long id = ids[cursor & (RANDOM_IDS - 1)];
+        return manager.update(id, PersonGenerator.copyOf(templates[cursor++ & (TEMPLATES - 1)]));
+    }
+
+    @Benchmark
+    public String removeByIdAndRestore() {
+        int id = ids[cursor++ & (RANDOM_IDS - 1)];
+        String result = manager.removeById(id);
+        manager.applyPut(persons[id - 1]);
+        return result;
+    }
+}
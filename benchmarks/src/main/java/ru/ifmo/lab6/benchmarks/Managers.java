@@ -0,0 +1,31 @@
+package ru.ifmo.lab6.benchmarks;
+
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Создание менеджера коллекции в том состоянии, в каком он находится на работающем сервере.
+ */
+final class Managers {
+    private Managers() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * @param persons Элементы коллекции.
+     * @param indexed true — дождаться построения вторичных индексов, false — выполнять запросы перебором,
+     *                как сервер сразу после загрузки.
+     */
+    static CollectionManager create(Person[] persons, boolean indexed) throws InterruptedException {
+        CollectionManager manager = new CollectionManager(PersonGenerator.collectionOf(persons));
+        if (indexed) {
+            // Построение завершается задачей для цикла событий; здесь ее выполняет поток бенчмарка.
+            LinkedBlockingQueue<Runnable> loop = new LinkedBlockingQueue<>();
+            manager.buildIndexesAsync(loop::add);
+            loop.take().run();
+        }
+        return manager;
+    }
+}
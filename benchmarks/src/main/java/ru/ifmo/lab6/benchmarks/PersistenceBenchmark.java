@@ -0,0 +1,104 @@
+package ru.ifmo.lab6.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.BinarySnapshotManager;
+import ru.ifmo.lab6.server.managers.XmlFileManager;
+import ru.ifmo.lab6.server.persistence.SnapshotStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Загрузка и сохранение коллекции в XML и в двоичный снимок.
+ * <p>
+ * Файлы генерируются во временном каталоге перед запуском. Сохранение выполняется полностью, как на сервере:
+ * временный файл, fsync и переименование, поэтому результат зависит от диска. Размер файла на один элемент
+ * выводится дополнительной метрикой {@code fileBytesPerPerson}. Режим загрузки XML и сжатие задаются
+ * параметрами сервера, например {@code -jvmArgsAppend -Dlab6.load.parallel=false}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    @Param({"XML", "BINARY"})
+    private String format;
+
+    @Param({"UNIFORM", "SKEWED"})
+    private PersonGenerator.Distribution distribution;
+
+    private Path directory;
+    private SnapshotStore source;
+    private SnapshotStore target;
+    private TreeSet<Person> collection;
+    private long fileSize;
+
+    /**
+     * Размер файла на один элемент; присваивается в каждом вызове, так как JMH обнуляет счетчики перед итерацией.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class FileSize {
+        public double fileBytesPerPerson;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lab6-bench");
+        source = store(directory.resolve("source"));
+        target = store(directory.resolve("target"));
+        collection = PersonGenerator.collectionOf(new PersonGenerator(distribution, 42).persons(size));
+        if (!source.save(collection, written -> { })) {
+            throw new IllegalStateException("Не удалось записать файл " + source.getFilePath());
+        }
+        fileSize = Files.size(Path.of(source.getFilePath()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public TreeSet<Person> load(FileSize counters) {
+        counters.fileBytesPerPerson = (double) fileSize / size;
+        return source.load();
+    }
+
+    @Benchmark
+    public boolean save(FileSize counters) {
+        counters.fileBytesPerPerson = (double) fileSize / size;
+        return target.save(collection, written -> { });
+    }
+
+    private SnapshotStore store(Path path) {
+        String file = path.toString() + ("XML".equals(format) ? ".xml" : ".snap");
+        return "XML".equals(format) ? new XmlFileManager(file) : new BinarySnapshotManager(file);
+    }
+}
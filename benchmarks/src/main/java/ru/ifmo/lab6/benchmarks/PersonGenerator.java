@@ -0,0 +1,136 @@
+package ru.ifmo.lab6.benchmarks;
+
+import ru.ifmo.lab6.model.Color;
+import ru.ifmo.lab6.model.Coordinates;
+import ru.ifmo.lab6.model.Country;
+import ru.ifmo.lab6.model.Location;
+import ru.ifmo.lab6.model.Person;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Генератор воспроизводимых тестовых данных для бенчмарков.
+ * Одинаковые распределение и зерно всегда дают одну и ту же последовательность элементов.
+ */
+public class PersonGenerator {
+    private static final LocalDateTime BASE_DATE = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final Color[] COLORS = Color.values();
+    private static final Country[] COUNTRIES = Country.values();
+
+    /**
+     * Распределение значений полей.
+     */
+    public enum Distribution {
+        /**
+         * Все поля равномерно распределены, у каждого седьмого элемента нет цвета волос.
+         */
+        UNIFORM,
+        /**
+         * Реальные данные: 80% элементов с одним цветом волос (последним по порядку), рост с тяжелым хвостом,
+         * короткие имена и почти всегда заполненное название местоположения.
+         */
+        SKEWED
+    }
+
+    private final Distribution distribution;
+    private final SplittableRandom random;
+
+    /**
+     * @param distribution Распределение значений полей.
+     * @param seed Зерно генератора.
+     */
+    public PersonGenerator(Distribution distribution, long seed) {
+        this.distribution = distribution;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @return Новый элемент без id и даты создания (как его присылает клиент).
+     */
+    public Person next() {
+        boolean skewed = distribution == Distribution.SKEWED;
+        Coordinates coordinates = new Coordinates(random.nextDouble(-1000, 348), (float) random.nextDouble(-1000, 1000));
+        Location location = new Location((float) random.nextDouble(1000), random.nextDouble(1000), random.nextDouble(1000),
+                skewed || random.nextBoolean() ? name(skewed ? 6 : 24) : null);
+        return new Person(name(skewed ? 8 : 24), coordinates, height(skewed), COLORS[random.nextInt(COLORS.length)],
+                hairColor(skewed), COUNTRIES[random.nextInt(COUNTRIES.length)], location);
+    }
+
+    /**
+     * Создает коллекцию, какую сервер загрузил бы из файла: id от 1 до size подряд.
+     * @param size Количество элементов.
+     * @return Элементы коллекции в порядке id (элемент с id i находится в позиции i - 1).
+     */
+    public Person[] persons(int size) {
+        Person[] persons = new Person[size];
+        for (int i = 0; i < size; i++) {
+            Person person = next();
+            person.setId(i + 1L);
+            person.setCreationDate(BASE_DATE.plusSeconds(i));
+            persons[i] = person;
+        }
+        return persons;
+    }
+
+    /**
+     * @param persons Элементы, созданные {@link #persons(int)}.
+     * @return Коллекция из этих элементов.
+     */
+    public static TreeSet<Person> collectionOf(Person[] persons) {
+        TreeSet<Person> collection = new TreeSet<>();
+        for (Person person : persons) {
+            collection.add(person);
+        }
+        return collection;
+    }
+
+    /**
+     * @param template Образец.
+     * @return Новый элемент с теми же полями, но без id и даты создания.
+     */
+    public static Person copyOf(Person template) {
+        return new Person(template.getName(), template.getCoordinates(), template.getHeight(), template.getEyeColor(),
+                template.getHairColor(), template.getNationality(), template.getLocation());
+    }
+
+    /**
+     * Перемешанные id существующих элементов, чтобы выбор элемента в бенчмарке не стоил вызова генератора.
+     * @param size Размер коллекции.
+     * @param count Количество id (степень двойки).
+     * @param seed Зерно генератора.
+     */
+    public static int[] randomIds(int size, int count, long seed) {
+        Random random = new Random(seed);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = 1 + random.nextInt(size);
+        }
+        return ids;
+    }
+
+    private long height(boolean skewed) {
+        if (!skewed) return 1 + random.nextInt(250);
+        // Распределение Парето: большинство значений около минимума, редкие очень большие.
+        return 100 + (long) (20 / Math.pow(1 - random.nextDouble(), 0.7));
+    }
+
+    private Color hairColor(boolean skewed) {
+        if (skewed) {
+            return random.nextInt(5) != 0 ? COLORS[COLORS.length - 1] : COLORS[random.nextInt(COLORS.length - 1)];
+        }
+        return random.nextInt(7) == 0 ? null : COLORS[random.nextInt(COLORS.length)];
+    }
+
+    private String name(int maxLength) {
+        int length = 3 + random.nextInt(maxLength - 2);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            // Половина имен кириллицей, как в реальных данных.
+            chars[i] = (char) ((length & 1) == 0 ? 'a' + random.nextInt(26) : 'а' + random.nextInt(32));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,107 @@
+package ru.ifmo.lab6.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.ifmo.lab6.command.Command;
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.Request;
+import ru.ifmo.lab6.network.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование и декодирование сообщений протокола тем же кодом, что у клиента и сервера:
+ * запрос кодирует клиент и декодирует сервер, ответ — наоборот.
+ * <p>
+ * Запрос с одним элементом — add, с несколькими — пакет add (так отправляется execute_script),
+ * ответ — результат show. Размер сообщения на один элемент выводится дополнительной метрикой
+ * {@code bytesPerPerson}; скорость выделения памяти — профилировщиком
+ * {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireCodecBenchmark {
+    @Param({"1", "100", "10000"})
+    private int persons;
+
+    @Param({"UNIFORM", "SKEWED"})
+    private PersonGenerator.Distribution distribution;
+
+    private Request request;
+    private Response response;
+    private byte[] encodedRequest;
+    private byte[] encodedResponse;
+    private double requestBytesPerPerson;
+    private double responseBytesPerPerson;
+
+    /**
+     * Размер закодированного сообщения на один элемент. JMH обнуляет счетчики перед каждой итерацией,
+     * поэтому значение присваивается (а не прибавляется) в каждом вызове и в отчете не зависит от количества операций.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class MessageSize {
+        public double bytesPerPerson;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Person[] generated = new PersonGenerator(distribution, 42).persons(persons);
+        ArrayList<Person> list = new ArrayList<>(persons);
+        ArrayList<Request> adds = new ArrayList<>(persons);
+        for (Person person : generated) {
+            list.add(person);
+            adds.add(new Request(CommandType.ADD, new Command.Add(PersonGenerator.copyOf(person))));
+        }
+        request = persons == 1 ? adds.get(0) : new Request(CommandType.BATCH, new Command.Batch(adds));
+        request.setRequestId(1);
+        response = new Response(Response.Status.SUCCESS, "Элементы коллекции:", list);
+        response.setRequestId(1);
+        encodedRequest = ru.ifmo.lab6.client.network.util.SerializationUtil.serialize(request);
+        encodedResponse = ru.ifmo.lab6.server.util.SerializationUtil.serialize(response);
+        requestBytesPerPerson = (double) encodedRequest.length / persons;
+        responseBytesPerPerson = (double) encodedResponse.length / persons;
+    }
+
+    @Benchmark
+    public byte[] encodeRequest(MessageSize size) throws IOException {
+        size.bytesPerPerson = requestBytesPerPerson;
+        return ru.ifmo.lab6.client.network.util.SerializationUtil.serialize(request);
+    }
+
+    @Benchmark
+    public Object decodeRequest(MessageSize size) throws IOException, ClassNotFoundException {
+        size.bytesPerPerson = requestBytesPerPerson;
+        return ru.ifmo.lab6.server.util.SerializationUtil.deserialize(encodedRequest);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse(MessageSize size) throws IOException {
+        size.bytesPerPerson = responseBytesPerPerson;
+        return ru.ifmo.lab6.server.util.SerializationUtil.serialize(response);
+    }
+
+    @Benchmark
+    public Object decodeResponse(MessageSize size) throws IOException, ClassNotFoundException {
+        size.bytesPerPerson = responseBytesPerPerson;
+        return ru.ifmo.lab6.client.network.util.SerializationUtil.deserialize(encodedResponse);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.ifmo.lab6.benchmarks.load;
+
+import ru.ifmo.lab6.benchmarks.PersonGenerator;
+import ru.ifmo.lab6.command.Command;
+import ru.ifmo.lab6.model.Color;
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.Request;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Набор команд, которые отправляет имитируемый клиент, и их доли в процентах.
+ * <p>
+ * show запрашивается страницами ({@link Command.ShowPage}), как это делает клиент, id для update и remove_by_id
+ * выбираются случайно в диапазоне {@code [1, idRange]}, поэтому часть таких запросов не находит элемент —
+ * так же, как у реальных пользователей.
+ */
+enum CommandMix {
+    /**
+     * 90% чтения: info, average_of_height, count_by_hair_color, filter_less_than_hair_color, страница show.
+     */
+    READ_HEAVY(30, 20, 20, 10, 10, 5, 3, 2, 0),
+    /**
+     * 80% изменений: add, update, remove_by_id.
+     */
+    WRITE_HEAVY(5, 5, 5, 0, 5, 40, 25, 15, 0),
+    /**
+     * Крупные сообщения: пакеты по {@value #BATCH_SIZE} add (как execute_script), страницы show
+     * по {@value #BULK_PAGE} элементов и filter_less_than_hair_color.
+     */
+    BULK(0, 0, 0, 20, 30, 0, 0, 10, 40);
+
+    static final int BATCH_SIZE = 64;
+    private static final int PAGE = 100;
+    private static final int BULK_PAGE = 1000;
+
+    private final int[] thresholds;
+
+    CommandMix(int info, int average, int count, int filter, int showPage, int add, int update, int remove, int batch) {
+        int[] weights = {info, average, count, filter, showPage, add, update, remove, batch};
+        thresholds = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            thresholds[i] = sum;
+        }
+        if (sum != 100) throw new IllegalStateException("Сумма долей команд " + name() + " должна быть 100, а не " + sum);
+    }
+
+    /**
+     * Разбирает имя набора в формате командной строки ({@code read-heavy}, {@code write-heavy}, {@code bulk}).
+     */
+    static CommandMix parse(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * @param random Генератор случайных чисел имитируемого клиента.
+     * @param persons Генератор элементов имитируемого клиента.
+     * @param idRange Верхняя граница id для update и remove_by_id.
+     * @return Следующий запрос.
+     */
+    Request next(SplittableRandom random, PersonGenerator persons, long idRange) {
+        int roll = random.nextInt(100);
+        int kind = 0;
+        while (roll >= thresholds[kind]) kind++;
+        Color[] colors = Color.values();
+        switch (kind) {
+            case 0:
+                return new Request(CommandType.INFO);
+            case 1:
+                return new Request(CommandType.AVERAGE_OF_HEIGHT);
+            case 2:
+                return new Request(CommandType.COUNT_BY_HAIR_COLOR, new Command.CountByHairColor(colors[random.nextInt(colors.length)]));
+            case 3:
+                return new Request(CommandType.FILTER_LESS_THAN_HAIR_COLOR, new Command.FilterLessThanHairColor(colors[random.nextInt(colors.length)]));
+            case 4: {
+                int limit = this == BULK ? BULK_PAGE : PAGE;
+                return new Request(CommandType.SHOW, new Command.ShowPage((int) random.nextLong(Math.max(1, idRange)), limit));
+            }
+            case 5:
+                return new Request(CommandType.ADD, new Command.Add(persons.next()));
+            case 6:
+                return new Request(CommandType.UPDATE, new Command.Update(1 + random.nextLong(idRange), persons.next()));
+            case 7:
+                return new Request(CommandType.REMOVE_BY_ID, new Command.RemoveById(1 + random.nextLong(idRange)));
+            default: {
+                ArrayList<Request> adds = new ArrayList<>(BATCH_SIZE);
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    adds.add(new Request(CommandType.ADD, new Command.Add(persons.next())));
+                }
+                return new Request(CommandType.BATCH, new Command.Batch(adds));
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package ru.ifmo.lab6.benchmarks.load;
+
+import ru.ifmo.lab6.benchmarks.PersonGenerator;
+import ru.ifmo.lab6.client.network.NetworkManager;
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.Request;
+import ru.ifmo.lab6.network.Response;
+import ru.ifmo.lab6.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный генератор: N имитируемых клиентов в замкнутом цикле (следующий запрос — после ответа
+ * на предыдущий) работают с запущенным сервером через тот же {@link NetworkManager}, что и консольный клиент.
+ * <p>
+ * Если задана целевая частота ({@code --rate}), запросы каждого клиента планируются по расписанию,
+ * а задержка отсчитывается от запланированного момента отправки, а не от фактического. Так задержка
+ * включает и время, которое запрос ждал, пока клиент был занят предыдущим медленным ответом, и отчет
+ * не страдает от скоординированного умолчания (coordinated omission). Без целевой частоты клиенты
+ * отправляют запросы так быстро, как отвечает сервер, и поправка не применяется.
+ * <p>
+ * Пример: {@code java -cp benchmarks.jar ru.ifmo.lab6.benchmarks.load.LoadGenerator --port 8888 --clients 32
+ * --mix read-heavy --rate 5000 --duration 30 --loss 0.02 --json load.json}
+ */
+public class LoadGenerator {
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final CommandMix mix;
+    private final double rate;
+    private final long idRange;
+    private final double loss;
+    private final String jsonPath;
+
+    private LoadGenerator(Map<String, String> options) {
+        host = options.getOrDefault("host", "localhost");
+        port = Integer.parseInt(options.getOrDefault("port", "8888"));
+        clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+        durationNanos = (long) (Double.parseDouble(options.getOrDefault("duration", "30")) * 1e9);
+        warmupNanos = (long) (Double.parseDouble(options.getOrDefault("warmup", "5")) * 1e9);
+        mix = CommandMix.parse(options.getOrDefault("mix", "read-heavy"));
+        rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        idRange = Long.parseLong(options.getOrDefault("ids", "10000"));
+        loss = Double.parseDouble(options.getOrDefault("loss", "0"));
+        jsonPath = options.get("json");
+    }
+
+    /**
+     * Результаты одного имитируемого клиента; после завершения потоков объединяются.
+     */
+    private static final class ClientResult {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final Map<CommandType, LatencyHistogram> byCommand = new EnumMap<>(CommandType.class);
+        long errors;
+        long failures;
+        long retransmissions;
+
+        void add(ClientResult other) {
+            latency.add(other.latency);
+            serviceTime.add(other.serviceTime);
+            other.byCommand.forEach((type, histogram) ->
+                    byCommand.computeIfAbsent(type, t -> new LatencyHistogram()).add(histogram));
+            errors += other.errors;
+            failures += other.failures;
+            retransmissions += other.retransmissions;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                System.err.println("Использование: LoadGenerator [--host localhost] [--port 8888] [--clients 8] [--duration 30]"
+                        + " [--warmup 5] [--mix read-heavy|write-heavy|bulk] [--rate 0] [--ids 10000] [--loss 0] [--json файл]");
+                System.exit(1);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws Exception {
+        InetSocketAddress target = new InetSocketAddress(host, port);
+        LossyProxy proxy = loss > 0 ? new LossyProxy(target, loss) : null;
+        if (proxy != null) target = proxy.getAddress();
+
+        System.out.printf(Locale.ROOT, "Клиентов: %d, набор команд: %s, целевая частота: %s, потери: %.1f%%, длительность: %.0f с (+%.0f с прогрев)%n",
+                clients, mix, rate > 0 ? (long) rate + " запр/с" : "без ограничения", loss * 100, durationNanos / 1e9, warmupNanos / 1e9);
+        long start = System.nanoTime() + 100_000_000L;
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        long intervalNanos = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+
+        List<ClientResult> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            ClientResult result = new ClientResult();
+            results.add(result);
+            NetworkManager network = new NetworkManager(target.getHostString(), target.getPort(), 1);
+            long firstSend = start + (intervalNanos > 0 ? intervalNanos * i / clients : 0);
+            int seed = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    runClient(network, result, seed, firstSend, measureFrom, end, intervalNanos);
+                } finally {
+                    result.retransmissions = network.getRetransmissions();
+                    network.close();
+                }
+            }, "load-client-" + i);
+            threads.add(thread);
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) thread.join();
+
+        ClientResult total = new ClientResult();
+        results.forEach(total::add);
+        report(total, durationNanos / 1e9);
+        if (proxy != null) {
+            System.out.println("Прокси: " + proxy.getStats());
+            proxy.close();
+        }
+    }
+
+    private void runClient(NetworkManager network, ClientResult result, int seed,
+                           long firstSend, long measureFrom, long end, long intervalNanos) {
+        SplittableRandom random = new SplittableRandom(seed);
+        PersonGenerator persons = new PersonGenerator(PersonGenerator.Distribution.SKEWED, seed);
+        long intended = firstSend;
+        while (true) {
+            long now = System.nanoTime();
+            if (intervalNanos <= 0) intended = Math.max(intended, now);
+            if (intended >= end) break;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            Request request = mix.next(random, persons, idRange);
+            long sentAt = System.nanoTime();
+            Response response = null;
+            try {
+                response = NetworkManager.await(network.sendAsync(request));
+            } catch (IOException e) {
+                if (intended >= measureFrom) result.failures++;
+            }
+            long done = System.nanoTime();
+            if (response != null && intended >= measureFrom) {
+                long latencyMicros = (done - intended) / 1000;
+                result.latency.record(latencyMicros);
+                result.serviceTime.record((done - sentAt) / 1000);
+                result.byCommand.computeIfAbsent(request.getCommandType(), t -> new LatencyHistogram()).record(latencyMicros);
+                if (response.isError()) result.errors++;
+            }
+            intended += intervalNanos;
+        }
+    }
+
+    private void report(ClientResult total, double seconds) throws IOException {
+        long completed = total.latency.getCount();
+        System.out.printf(Locale.ROOT, "%nВыполнено запросов: %d (%.1f запр/с), ошибок сервера: %d, без ответа: %d, повторных отправок: %d%n",
+                completed, completed / seconds, total.errors, total.failures, total.retransmissions);
+        System.out.println(rate > 0
+                ? "Задержка от запланированного момента отправки (с поправкой на скоординированное умолчание), мкс:"
+                : "Задержка (целевая частота не задана, поправка не применяется), мкс:");
+        System.out.println(String.format(Locale.ROOT, "%-28s %8s %8s %8s %8s %8s %8s %10s",
+                "", "count", "p50", "p90", "p99", "p99.9", "max", "mean"));
+        printRow("все запросы", total.latency);
+        if (rate > 0) printRow("время ответа (без поправки)", total.serviceTime);
+        total.byCommand.forEach((type, histogram) -> printRow(type.name().toLowerCase(), histogram));
+        if (jsonPath != null) {
+            writeJson(total, seconds);
+            System.out.println("Результаты записаны в " + jsonPath);
+        }
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram) {
+        System.out.println(String.format(Locale.ROOT, "%-28s %8d %8d %8d %8d %8d %8d %10.1f", name, histogram.getCount(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMax(), histogram.getMean()));
+    }
+
+    private void writeJson(ClientResult total, double seconds) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Path.of(jsonPath), StandardCharsets.UTF_8))) {
+            out.printf(Locale.ROOT, "{%n  \"clients\": %d,%n  \"mix\": \"%s\",%n  \"targetRate\": %.1f,%n  \"loss\": %.4f,%n  \"durationSeconds\": %.1f,%n",
+                    clients, mix, rate, loss, seconds);
+            out.printf(Locale.ROOT, "  \"completed\": %d,%n  \"throughput\": %.1f,%n  \"errors\": %d,%n  \"failures\": %d,%n  \"retransmissions\": %d,%n",
+                    total.latency.getCount(), total.latency.getCount() / seconds, total.errors, total.failures, total.retransmissions);
+            out.printf("  \"latencyMicros\": %s,%n", json(total.latency));
+            out.printf("  \"serviceTimeMicros\": %s,%n", json(total.serviceTime));
+            out.println("  \"commands\": {");
+            int i = 0;
+            for (Map.Entry<CommandType, LatencyHistogram> entry : total.byCommand.entrySet()) {
+                out.printf("    \"%s\": %s%s%n", entry.getKey().name().toLowerCase(), json(entry.getValue()),
+                        ++i < total.byCommand.size() ? "," : "");
+            }
+            out.println("  }");
+            out.println("}");
+        }
+    }
+
+    private static String json(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "{\"count\": %d, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d, \"mean\": %.1f}",
+                histogram.getCount(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMax(), histogram.getMean());
+    }
+}
@@ -0,0 +1,125 @@
+package ru.ifmo.lab6.benchmarks.load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Локальный UDP-прокси, теряющий датаграммы с заданной вероятностью в каждом направлении.
+ * <p>
+ * Для каждого клиента открывается отдельный сокет к серверу, поэтому сервер видит клиентов
+ * по-прежнему разными адресами. Работает в одном фоновом потоке.
+ */
+class LossyProxy implements AutoCloseable {
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Selector selector;
+    private final DatagramChannel front;
+    private final InetSocketAddress server;
+    private final double loss;
+    private final SplittableRandom random = new SplittableRandom(1);
+    private final Map<SocketAddress, DatagramChannel> upstreams = new HashMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private long forwarded;
+    private long dropped;
+
+    /**
+     * @param server Адрес сервера.
+     * @param loss Вероятность потери датаграммы в каждом направлении (от 0 до 1).
+     */
+    LossyProxy(InetSocketAddress server, double loss) throws IOException {
+        this.server = server;
+        this.loss = loss;
+        this.selector = Selector.open();
+        this.front = DatagramChannel.open();
+        front.bind(new InetSocketAddress("localhost", 0));
+        front.configureBlocking(false);
+        front.register(selector, SelectionKey.OP_READ);
+        thread = new Thread(this::run, "lossy-proxy");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return Адрес, к которому должны подключаться клиенты.
+     */
+    InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) front.getLocalAddress();
+    }
+
+    synchronized String getStats() {
+        return "переслано " + forwarded + ", потеряно " + dropped;
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select(100);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    SocketAddress from;
+                    buffer.clear();
+                    while ((from = channel.receive(buffer)) != null) {
+                        buffer.flip();
+                        if (channel == front) {
+                            forward(upstream(from), buffer, server);
+                        } else {
+                            forward(front, buffer, (SocketAddress) key.attachment());
+                        }
+                        buffer.clear();
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) System.err.println("Ошибка прокси: " + e.getMessage());
+            }
+        }
+    }
+
+    private void forward(DatagramChannel channel, ByteBuffer datagram, SocketAddress to) throws IOException {
+        boolean drop = random.nextDouble() < loss;
+        synchronized (this) {
+            if (drop) dropped++; else forwarded++;
+        }
+        if (!drop) channel.send(datagram, to);
+    }
+
+    private DatagramChannel upstream(SocketAddress client) throws IOException {
+        DatagramChannel channel = upstreams.get(client);
+        if (channel == null) {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(server);
+            channel.register(selector, SelectionKey.OP_READ, client);
+            upstreams.put(client, channel);
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (DatagramChannel channel : upstreams.values()) channel.close();
+        front.close();
+        selector.close();
+    }
+}
@@ -5,18 +5,21 @@ import org.jline.reader.impl.completer.StringsCompleter;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
 import ru.ifmo.lab6.client.managers.CommandFactory;
+import ru.ifmo.lab6.client.managers.ScriptRunner;
 import ru.ifmo.lab6.client.managers.UserInputHandler;
 import ru.ifmo.lab6.client.util.ConsoleInputProvider;
-import ru.ifmo.lab6.client.util.ScriptInputProvider;
+import ru.ifmo.lab6.client.util.ResponseRenderer;
+import ru.ifmo.lab6.command.Command;
+import ru.ifmo.lab6.model.Person;
 import ru.ifmo.lab6.network.CommandType;
 import ru.ifmo.lab6.network.Request;
 import ru.ifmo.lab6.network.Response;
 import ru.ifmo.lab6.client.network.NetworkManager;
+import ru.ifmo.lab6.client.network.ReadCache;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -24,17 +27,28 @@ import java.util.stream.Collectors;
  * реализует отказоустойчивую инициализацию с автодополнением.
  */
 public class Client {
+    private static final int SHOW_PAGE_SIZE = 1000;
+    private static final int SHOW_PIPELINE_DEPTH = 4;
+
     private final NetworkManager networkManager;
+    private final ReadCache readCache = ReadCache.fromSystemProperties();
+    private final ResponseRenderer renderer;
     private final Terminal terminal;
     private CommandFactory commandFactory;
     private LineReader lineReader;
     private boolean running = true;
 
-    private final Set<String> scriptHistory = new HashSet<>();
-
     public Client(String host, int port) throws IOException {
-        this.networkManager = new NetworkManager(host, port);
+        this(host, port, NetworkManager.DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window Максимальное количество запросов, одновременно ожидающих ответа сервера.
+     */
+    public Client(String host, int port, int window) throws IOException {
+        this.networkManager = new NetworkManager(host, port, window);
         this.terminal = TerminalBuilder.builder().system(true).build();
+        this.renderer = new ResponseRenderer(terminal.writer(), ResponseRenderer.isTableFormatRequested());
     }
 
     /**
@@ -97,6 +111,7 @@ public class Client {
 
         Completer defaultCompleter = new StringsCompleter(
                 Arrays.stream(CommandType.values())
+                        .filter(command -> !command.isService())
                         .map(CommandType::getSignature)
                         .map(s -> s.split(" ")[0])
                         .collect(Collectors.toList())
@@ -136,6 +151,9 @@ public class Client {
                     case "exit":
                         running = false;
                         break;
+                    case "cache_stats":
+                        System.out.println(readCache.getStats());
+                        break;
                     case "execute_script":
                         if (arg == null) {
                             System.err.println("Ошибка: необходимо указать имя файла скрипта.");
@@ -159,65 +177,36 @@ public class Client {
         stop();
     }
 
+    /**
+     * Выполняет скрипт: команды разбираются заранее и отправляются пакетами (см. {@link ScriptRunner}).
+     * @param fileName Путь к файлу скрипта.
+     */
     private void executeScript(String fileName) {
-        String resolvedPath;
-        try {
-            resolvedPath = new File(fileName).getCanonicalPath();
-        } catch (IOException e) {
-            System.err.println("Ошибка при разрешении пути файла: " + fileName);
-            return;
-        }
-
-        if (scriptHistory.contains(resolvedPath)) {
-            System.err.println("Ошибка: Рекурсивный вызов скрипта! Файл '" + resolvedPath + "' уже исполняется.");
-            return;
-        }
-        scriptHistory.add(resolvedPath);
-
-        try (Scanner fileScanner = new Scanner(new File(fileName))) {
-            System.out.println("--- Исполнение скрипта: " + fileName + " ---");
-            UserInputHandler scriptInputHandler = new UserInputHandler(new ScriptInputProvider(fileScanner));
-            CommandFactory scriptCommandFactory = new CommandFactory(scriptInputHandler);
-
-            while (true) {
-                try {
-                    String line = scriptInputHandler.readLine("");
-                    if (line.trim().isEmpty()) continue;
-
-                    String[] parts = line.trim().split("\\s+", 2);
-                    String commandName = parts[0].toLowerCase();
-                    String arg = parts.length > 1 ? parts[1] : null;
-
-                    if (commandName.equals("execute_script")) {
-                        if (arg != null) {
-                            executeScript(arg);
-                        } else {
-                            System.err.println("Необходимо указать имя файла для execute_script.");
-                        }
-                    } else {
-                        Request request = scriptCommandFactory.createRequest(line);
-                        if (request != null) {
-                            this.processRequest(request);
-                        }
-                    }
-                } catch (NoSuchElementException e) {
-                    break;
-                }
-            }
-            System.out.println("--- Завершение скрипта: " + fileName + " ---");
-        } catch (FileNotFoundException e) {
-            System.err.println("Ошибка: файл скрипта не найден: " + fileName);
-        } catch (Exception e) {
-            System.err.println("Критическая ошибка при выполнении скрипта '" + fileName + "': " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            scriptHistory.remove(resolvedPath);
-        }
+        new ScriptRunner(networkManager, this::handleResponse).run(fileName);
+        readCache.invalidate();
     }
 
+    /**
+     * Выполняет запрос. Ответы на читающие команды по возможности берутся из кэша чтения.
+     * @param request Запрос.
+     */
     public void processRequest(Request request) {
+        Response cached = readCache.lookup(request);
+        if (cached != null) {
+            System.out.println("(ответ из кэша клиента)");
+            handleResponse(cached, request);
+            return;
+        }
         try {
-            Response response = networkManager.sendAndReceive(request);
+            if (request.getCommandType() == CommandType.SHOW && request.getArguments() == null) {
+                showPaged(request);
+                return;
+            }
+            Response response = readCache.onResponse(request, networkManager.sendAndReceive(request));
+            if (response == null) {
+                request.setIfVersion(0);
+                response = readCache.onResponse(request, networkManager.sendAndReceive(request));
+            }
             if (response != null) {
                 handleResponse(response, request);
             }
@@ -226,28 +215,72 @@ public class Client {
         }
     }
 
-    private void handleResponse(Response response,Request request) {
-        if (response.getStatus() == Response.Status.ERROR) {
-            System.err.println("Ошибка от сервера: " + response.getMessage());
-        } else {
-            if (response.getMessage() != null && !response.getMessage().isEmpty()) {
-                System.out.println(response.getMessage());
+    private void handleResponse(Response response, Request request) {
+        renderer.render(response, request);
+    }
+
+    /**
+     * Выводит коллекцию по мере получения страниц. Следующие страницы запрашиваются заранее по ключам
+     * из ответа на первую страницу (не больше {@value #SHOW_PIPELINE_DEPTH} одновременно), поэтому вывод
+     * начинается после первой страницы, а остальные приходят, пока выводятся предыдущие. Страницы собираются
+     * в один ответ для кэша чтения, только если коллекция в нем поместится ({@link ReadCache#canHold(int)}),
+     * и сохраняются, если коллекция не менялась во время получения страниц; иначе выведенные страницы не хранятся.
+     * @param request Исходный запрос show (может содержать версию для перепроверки кэша).
+     */
+    private void showPaged(Request request) throws IOException {
+        Request firstRequest = new Request(CommandType.SHOW, new Command.ShowPage(0, SHOW_PAGE_SIZE));
+        firstRequest.setIfVersion(request.getIfVersion());
+        Response first = networkManager.sendAndReceive(firstRequest);
+        if (!(first.getData() instanceof Command.PageResult firstPage)) {
+            // Данные не изменились (ответ из кэша), ошибка или сервер без постраничного вывода.
+            Response response = readCache.onResponse(request, first);
+            if (response == null) {
+                request.setIfVersion(0);
+                showPaged(request);
+            } else {
+                handleResponse(response, request);
             }
-            if (response.getData() != null && request.getCommandType() != CommandType.HELP) {
-                if (response.getData() instanceof Collection) {
-                    Collection<?> collection = (Collection<?>) response.getData();
-                    if (collection.isEmpty()){
-                        System.out.println("Коллекция пуста.");
-                    } else {
-                        collection.forEach(item -> {
-                            System.out.println(item.toString());
-                            System.out.println("---");
-                        });
-                    }
-                } else {
-                    System.out.println(response.getData().toString());
-                }
+            return;
+        }
+
+        long version = first.getCollectionVersion();
+        boolean consistent = true;
+        ArrayList<Person> all = readCache.canHold(firstPage.total) ? new ArrayList<>(firstPage.total) : null;
+        renderer.println(first.getMessage());
+        if (firstPage.total == 0) {
+            renderer.println("Коллекция пуста.");
+        }
+        renderer.renderItems(firstPage.persons, true);
+        if (all != null) all.addAll(firstPage.persons);
+
+        Deque<CompletableFuture<Response>> pages = new ArrayDeque<>();
+        long[] pageKeys = firstPage.pageKeys != null ? firstPage.pageKeys : new long[0];
+        int nextPage = 0;
+        while (nextPage < pageKeys.length || !pages.isEmpty()) {
+            while (pages.size() < SHOW_PIPELINE_DEPTH && nextPage < pageKeys.length) {
+                pages.add(networkManager.sendAsync(new Request(CommandType.SHOW,
+                        new Command.ShowPage(pageKeys[nextPage++], SHOW_PAGE_SIZE))));
             }
+            Response response = NetworkManager.await(pages.poll());
+            if (!(response.getData() instanceof Command.PageResult page)) {
+                renderer.error("Ошибка от сервера: " + response.getMessage());
+                return;
+            }
+            consistent &= response.getCollectionVersion() == version;
+            renderer.renderItems(page.persons, false);
+            if (all != null) all.addAll(page.persons);
+            if (page.persons.isEmpty()) {
+                break; // коллекция уменьшилась во время вывода
+            }
+        }
+        renderer.flush();
+
+        if (!consistent) {
+            System.out.println("Коллекция изменялась во время вывода, часть элементов могла быть пропущена или повторена.");
+        } else if (all != null) {
+            Response full = new Response(Response.Status.SUCCESS, first.getMessage(), all);
+            full.setCollectionVersion(version);
+            readCache.onResponse(request, full);
         }
     }
 
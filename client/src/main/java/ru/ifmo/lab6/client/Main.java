@@ -1,5 +1,7 @@
 package ru.ifmo.lab6.client;
 
+import ru.ifmo.lab6.client.network.NetworkManager;
+
 import java.io.IOException;
 
 /**
@@ -26,7 +28,8 @@ public class Main {
         }
 
         try {
-            Client client = new Client(host, port);
+            int window = Integer.getInteger("lab6.client.window", NetworkManager.DEFAULT_WINDOW);
+            Client client = new Client(host, port, window);
             client.initialize();
             client.run();
         } catch (IOException e) {
@@ -37,6 +37,7 @@ public class CommandFactory {
                 case "show": return new Request(CommandType.SHOW);
                 case "clear": return new Request(CommandType.CLEAR);
                 case "average_of_height": return new Request(CommandType.AVERAGE_OF_HEIGHT);
+                case "stats": return new Request(CommandType.STATS);
 
                 case "remove_by_id":
                     if (arg == null) throw new IllegalArgumentException("Необходимо указать ID.");
@@ -50,12 +51,12 @@ public class CommandFactory {
                 case "update":
                     if (arg == null) throw new IllegalArgumentException("Необходимо указать ID.");
                     long updateId = Long.parseLong(arg);
-                    System.out.println("Ввод новых данных для элемента с ID " + updateId);
+                    inputHandler.printHint("Ввод новых данных для элемента с ID " + updateId);
                     return new Request(CommandType.UPDATE, new Command.Update(updateId, inputHandler.requestPersonData()));
 
                 case "remove_greater":
                 case "remove_lower":
-                    System.out.println("Введите данные эталонного элемента для сравнения:");
+                    inputHandler.printHint("Введите данные эталонного элемента для сравнения:");
                     Person thresholdPerson = inputHandler.requestPersonData();
                     if (commandName.equals("remove_greater")) {
                         return new Request(CommandType.REMOVE_GREATER, new Command.RemoveGreater(thresholdPerson));
@@ -0,0 +1,305 @@
+package ru.ifmo.lab6.client.managers;
+
+import ru.ifmo.lab6.client.network.NetworkManager;
+import ru.ifmo.lab6.client.network.RequestNotSentException;
+import ru.ifmo.lab6.client.network.util.SerializationUtil;
+import ru.ifmo.lab6.client.util.ScriptInputProvider;
+import ru.ifmo.lab6.command.Command;
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.Request;
+import ru.ifmo.lab6.network.Response;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Исполняет скрипт (execute_script) с минимальным количеством обменов с сервером.
+ * <p>
+ * Сначала скрипт разбирается целиком, включая вложенные execute_script, в плоский список команд.
+ * По умолчанию весь список отправляется одним запросом {@link CommandType#RUN_SCRIPT}: сервер выполняет
+ * команды за один проход и возвращает список результатов. Если скрипт не удалось отправить одним запросом,
+ * сервер ответил, что не поддерживает RUN_SCRIPT ({@link Response.Status#UNSUPPORTED}), или задано {@code -Dlab6.client.script=batch}, подряд идущие команды
+ * с небольшими ответами объединяются в пакеты ({@link CommandType#BATCH}),
+ * которые сервер выполняет по порядку за один обмен. Пакеты, не изменяющие коллекцию, отправляются,
+ * не дожидаясь ответов на предыдущие (в пределах окна сетевого менеджера). Перед отправкой пакета,
+ * изменяющего коллекцию, клиент дожидается всех предыдущих ответов, а после нее — ответа на сам пакет,
+ * поэтому каждая команда видит коллекцию в том же состоянии, что и при последовательном выполнении.
+ * Результаты выводятся построчно в порядке команд скрипта.
+ */
+public class ScriptRunner {
+    private static final int MAX_BATCH_COMMANDS = 64;
+    private static final int MAX_BATCH_BYTES = 32 * 1024;
+    private static final boolean SERVER_SIDE = !"batch".equalsIgnoreCase(System.getProperty("lab6.client.script", "server"));
+
+    private final NetworkManager networkManager;
+    private final BiConsumer<Response, Request> responseHandler;
+
+    /**
+     * Команда скрипта вместе с местом, где она записана.
+     */
+    private static final class Step {
+        final String location;
+        final String text;
+        final Request request;
+
+        Step(String location, String text, Request request) {
+            this.location = location;
+            this.text = text;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Отправленный запрос, ответ на который еще не выведен.
+     */
+    private static final class Exchange {
+        final List<Step> steps;
+        final CompletableFuture<Response> future;
+        final boolean wrapped;
+
+        /**
+         * @param wrapped true, если ответ содержит список ответов на каждую команду.
+         */
+        Exchange(List<Step> steps, CompletableFuture<Response> future, boolean wrapped) {
+            this.steps = steps;
+            this.future = future;
+            this.wrapped = wrapped;
+        }
+    }
+
+    /**
+     * @param networkManager Сетевой менеджер клиента.
+     * @param responseHandler Обработчик, выводящий ответ на одну команду.
+     */
+    public ScriptRunner(NetworkManager networkManager, BiConsumer<Response, Request> responseHandler) {
+        this.networkManager = networkManager;
+        this.responseHandler = responseHandler;
+    }
+
+    /**
+     * Разбирает и выполняет скрипт.
+     * @param fileName Путь к файлу скрипта.
+     */
+    public void run(String fileName) {
+        List<Step> steps = new ArrayList<>();
+        if (!parse(fileName, steps, new HashSet<>())) {
+            return;
+        }
+        System.out.println("--- Исполнение скрипта: " + fileName + " (команд: " + steps.size() + ") ---");
+        if (!SERVER_SIDE || !executeOnServer(steps)) {
+            execute(steps);
+        }
+        System.out.println("--- Завершение скрипта: " + fileName + " ---");
+    }
+
+    /**
+     * Разбирает файл скрипта и добавляет его команды в список, раскрывая вложенные скрипты.
+     * @return false, если файл не удалось открыть.
+     */
+    private boolean parse(String fileName, List<Step> steps, Set<String> scriptHistory) {
+        String resolvedPath;
+        try {
+            resolvedPath = new File(fileName).getCanonicalPath();
+        } catch (IOException e) {
+            System.err.println("Ошибка при разрешении пути файла: " + fileName);
+            return false;
+        }
+
+        if (scriptHistory.contains(resolvedPath)) {
+            System.err.println("Ошибка: Рекурсивный вызов скрипта! Файл '" + resolvedPath + "' уже исполняется.");
+            return false;
+        }
+        scriptHistory.add(resolvedPath);
+
+        try (Scanner fileScanner = new Scanner(new File(fileName))) {
+            ScriptInputProvider provider = new ScriptInputProvider(fileScanner, false);
+            UserInputHandler scriptInputHandler = new UserInputHandler(provider);
+            CommandFactory scriptCommandFactory = new CommandFactory(scriptInputHandler);
+
+            while (true) {
+                String line;
+                try {
+                    line = scriptInputHandler.readLine("");
+                } catch (NoSuchElementException e) {
+                    break;
+                }
+                if (line.isEmpty()) continue;
+                String location = fileName + ":" + provider.getLineNumber();
+
+                String[] parts = line.split("\\s+", 2);
+                String commandName = parts[0].toLowerCase();
+                String arg = parts.length > 1 ? parts[1] : null;
+
+                if (commandName.equals("execute_script")) {
+                    if (arg != null) {
+                        parse(arg, steps, scriptHistory);
+                    } else {
+                        System.err.println("[" + location + "] Необходимо указать имя файла для execute_script.");
+                    }
+                } else {
+                    Request request = scriptCommandFactory.createRequest(line);
+                    if (request != null) {
+                        steps.add(new Step(location, line, request));
+                    } else {
+                        System.err.println("[" + location + "] Команда '" + line + "' пропущена.");
+                    }
+                }
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            System.err.println("Ошибка: файл скрипта не найден: " + fileName);
+            return false;
+        } finally {
+            scriptHistory.remove(resolvedPath);
+        }
+    }
+
+    /**
+     * Отправляет весь скрипт одним запросом.
+     * Команды отправляются повторно пакетами, только если скрипт не был отправлен (например, слишком велик)
+     * или сервер явно сообщил, что не выполнял его: любая другая ошибка выводится для всего скрипта,
+     * так как часть команд могла быть уже выполнена.
+     * @return false, если скрипт не отправлен или не поддерживается сервером и ни одна команда не была выполнена.
+     */
+    private boolean executeOnServer(List<Step> steps) {
+        if (steps.isEmpty()) return true;
+        ArrayList<Request> requests = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            requests.add(step.request);
+        }
+        Exchange exchange = new Exchange(steps,
+                networkManager.sendAsync(new Request(CommandType.RUN_SCRIPT, new Command.RunScript(requests))), true);
+        Response response;
+        try {
+            response = NetworkManager.await(exchange.future);
+        } catch (RequestNotSentException e) {
+            System.err.println("Не удалось отправить скрипт одним запросом (" + e.getMessage()
+                    + "), команды будут отправлены пакетами.");
+            return false;
+        } catch (IOException e) {
+            // Сетевой менеджер уже повторял запрос с тем же идентификатором, и сервер не выполнил бы его дважды.
+            // Отправлять скрипт заново новым запросом нельзя: сервер мог его уже выполнить.
+            printFailure(steps, e);
+            return true;
+        }
+        if (response.getStatus() == Response.Status.UNSUPPORTED) {
+            System.err.println("Сервер не поддерживает выполнение скрипта (" + response.getMessage()
+                    + "), команды будут отправлены пакетами.");
+            return false;
+        }
+        print(exchange, response);
+        return true;
+    }
+
+    private void execute(List<Step> steps) {
+        Deque<Exchange> inFlight = new ArrayDeque<>();
+        int i = 0;
+        while (i < steps.size()) {
+            List<Step> group = new ArrayList<>();
+            ArrayList<Request> requests = new ArrayList<>();
+            boolean modifying = false;
+            int bytes = 0;
+            while (i < steps.size() && group.size() < MAX_BATCH_COMMANDS) {
+                Step step = steps.get(i);
+                if (!isBatchable(step.request)) {
+                    if (group.isEmpty()) {
+                        group.add(step);
+                        requests.add(step.request);
+                        i++;
+                    }
+                    break;
+                }
+                int size = estimateSize(step.request);
+                if (!group.isEmpty() && bytes + size > MAX_BATCH_BYTES) break;
+                group.add(step);
+                requests.add(step.request);
+                modifying |= step.request.getCommandType().isModifying();
+                bytes += size;
+                i++;
+            }
+
+            Request request = requests.size() == 1
+                    ? requests.get(0)
+                    : new Request(CommandType.BATCH, new Command.Batch(requests));
+            if (modifying) {
+                // Изменение должно выполниться после всех предыдущих команд и до всех следующих.
+                drain(inFlight, true);
+            }
+            inFlight.add(new Exchange(group, networkManager.sendAsync(request), requests.size() > 1));
+            drain(inFlight, modifying);
+        }
+        drain(inFlight, true);
+    }
+
+    /**
+     * Выводит результаты отправленных запросов по порядку.
+     * @param all true — дождаться всех ответов; false — вывести только уже полученные в начале очереди.
+     */
+    private void drain(Deque<Exchange> inFlight, boolean all) {
+        while (!inFlight.isEmpty() && (all || inFlight.peek().future.isDone())) {
+            Exchange exchange = inFlight.poll();
+            try {
+                print(exchange, NetworkManager.await(exchange.future));
+            } catch (IOException e) {
+                printFailure(exchange.steps, e);
+            }
+        }
+    }
+
+    private void printFailure(List<Step> steps, IOException e) {
+        for (Step step : steps) {
+            System.out.println("[" + step.location + "] " + step.text);
+            System.err.println("Ошибка при обмене данными с сервером: " + e.getMessage());
+        }
+    }
+
+    private void print(Exchange exchange, Response response) {
+        List<Step> steps = exchange.steps;
+        List<?> responses = null;
+        if (exchange.wrapped) {
+            if (response.getStatus() == Response.Status.SUCCESS && response.getData() instanceof List<?> list
+                    && list.size() == steps.size()) {
+                responses = list;
+            }
+        }
+        for (int k = 0; k < steps.size(); k++) {
+            Step step = steps.get(k);
+            System.out.println("[" + step.location + "] " + step.text);
+            if (!exchange.wrapped) {
+                responseHandler.accept(response, step.request);
+            } else if (responses != null) {
+                responseHandler.accept((Response) responses.get(k), step.request);
+            } else {
+                System.err.println("Ошибка от сервера: " + response.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Команды, ответ на которые может содержать всю коллекцию, отправляются отдельно,
+     * чтобы ответ на пакет гарантированно поместился в одну датаграмму.
+     */
+    private static boolean isBatchable(Request request) {
+        CommandType type = request.getCommandType();
+        return type != CommandType.SHOW && type != CommandType.FILTER_LESS_THAN_HAIR_COLOR && type != CommandType.HELP;
+    }
+
+    private static int estimateSize(Request request) {
+        try {
+            return SerializationUtil.serialize(request).length;
+        } catch (IOException e) {
+            return MAX_BATCH_BYTES;
+        }
+    }
+}
@@ -39,13 +39,23 @@ public class UserInputHandler {
         return provider.readLine(prompt);
     }
 
+    /**
+     * Выводит подсказку к вводу. Для неинтерактивного источника (скрипта) подсказки не выводятся.
+     * @param message Текст подсказки.
+     */
+    public void printHint(String message) {
+        if (provider.isInteractive()) {
+            System.out.println(message);
+        }
+    }
+
     /**
      * Запрашивает у пользователя все данные для создания нового объекта Person.
      * @return Готовый объект Person.
      * @throws NoSuchElementException если ввод прерван.
      */
     public Person requestPersonData() throws NoSuchElementException {
-        System.out.println("Ввод данных для нового человека:");
+        printHint("Ввод данных для нового человека:");
         String name = requestString("Введите имя (не может быть пустым):", false);
         Coordinates coordinates = requestCoordinatesData();
         long height = requestLong("Введите рост (целое число > 0):", 1L, null);
@@ -61,7 +71,7 @@ public class UserInputHandler {
      * @return Новый объект Coordinates.
      */
     private Coordinates requestCoordinatesData() {
-        System.out.println("Ввод координат:");
+        printHint("Ввод координат:");
         Double x = requestDouble("  Введите координату X (дробное число, max: 348):", null, 348.0);
         float y = requestFloat("  Введите координату Y (дробное число):", null, null);
         return new Coordinates(x, y);
@@ -72,7 +82,7 @@ public class UserInputHandler {
      * @return Новый объект Location.
      */
     private Location requestLocationData() {
-        System.out.println("Ввод местоположения:");
+        printHint("Ввод местоположения:");
         Float x = requestFloat("  Введите координату X местоположения (дробное число):", null, null);
         double y = requestDouble("  Введите координату Y местоположения (дробное число):", null, null);
         Double z = requestDouble("  Введите координату Z местоположения (дробное число):", null, null);
@@ -120,9 +130,9 @@ public class UserInputHandler {
      * @param <T> Тип перечисления.
      */
     public <T extends Enum<T>> T requestEnum(Class<T> enumClass, String fieldName, boolean nullable) {
-        System.out.println("Выберите " + fieldName + ":");
+        printHint("Выберите " + fieldName + ":");
         String values = enumClass == Color.class ? Color.listValues() : Country.listValues();
-        System.out.println("Доступные значения: " + values);
+        printHint("Доступные значения: " + values);
         while (true) {
             try {
                 String input = requestString("Введите название (или оставьте пустым, если разрешено null):", true);
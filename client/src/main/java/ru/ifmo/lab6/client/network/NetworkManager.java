@@ -1,37 +1,122 @@
 package ru.ifmo.lab6.client.network;
 
 import ru.ifmo.lab6.client.network.util.SerializationUtil;
+import ru.ifmo.lab6.network.DatagramFragments;
 import ru.ifmo.lab6.network.Request;
 import ru.ifmo.lab6.network.Response;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Управляет сетевым взаимодействием на клиенте с использованием NIO.
- * Отправляет запросы и ожидает ответа от сервера с таймаутом.
+ * <p>
+ * Каждому запросу назначается идентификатор, сервер возвращает его в ответе.
+ * Ответы принимает отдельный поток и сопоставляет их с ожидающими запросами по идентификатору,
+ * поэтому одновременно может выполняться несколько запросов (не больше размера окна),
+ * а опоздавший ответ никогда не будет принят за ответ на другой запрос.
+ * <p>
+ * Если ответ не пришел за интервал повторной отправки ({@link RttEstimator}: оценка времени обмена
+ * с экспоненциальной задержкой и случайной добавкой), запрос отправляется снова, но не более
+ * {@value #MAX_RETRANSMISSIONS} раз и в пределах общего бюджета повторов: каждый повтор расходует
+ * жетон, каждый ответ без повтора возвращает {@value #RETRY_TOKEN_RATIO} жетона, поэтому при массовых
+ * потерях клиент не умножает нагрузку на сервер. Запрос несет случайный идентификатор клиента и свой номер,
+ * по которым сервер узнает повторно отправленный изменяющий запрос и возвращает сохраненный ответ
+ * вместо повторного выполнения. Запрос, на который не пришел ответ за {@value #TIMEOUT_MS} мс, завершается ошибкой.
+ * Запросы и ответы, не помещающиеся в одну датаграмму, передаются фрагментами ({@link DatagramFragments}).
+ * Длинный запрос повторяется целиком, всеми фрагментами с тем же идентификатором сообщения; интервал повтора
+ * и таймаут для него увеличиваются на {@value #FRAGMENT_ALLOWANCE_MS} мс на каждый фрагмент, чтобы успели
+ * передаться и сам запрос, и ответ на него.
  */
 public class NetworkManager {
     private static final int BUFFER_SIZE = 65536;
     private static final int TIMEOUT_MS = 5000;
+    private static final int FRAGMENT_ALLOWANCE_MS = 20;
+    private static final int TICK_MS = 50;
+    private static final int MAX_RETRANSMISSIONS = 5;
+    private static final double MAX_RETRY_TOKENS = 10;
+    private static final double RETRY_TOKEN_RATIO = 0.5;
+    private static final long SEND_WAIT_NANOS = 100_000_000L;
+    public static final int DEFAULT_WINDOW = 32;
 
     private final InetSocketAddress serverAddress;
     private final DatagramChannel channel;
     private final Selector selector;
     private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final long clientId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final Semaphore window;
+    private final DatagramFragments.Assembler<SocketAddress> assembler = new DatagramFragments.Assembler<>();
+    private final Thread receiver;
+    private final RttEstimator rtt = new RttEstimator();
+    private double retryTokens = MAX_RETRY_TOKENS;
+    private final AtomicLong retransmissions = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Запрос, ожидающий ответа.
+     */
+    private static final class PendingRequest {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        final byte[] data;
+        final long timeoutMs;
+        final long deadline;
+        final long sentAt;
+        /** Дополнительное время на передачу фрагментов длинного запроса. */
+        final long allowanceNanos;
+        long retransmitAt;
+        int retransmissions;
+
+        PendingRequest(byte[] data, long sentAt, long firstTimeoutNanos) {
+            long allowanceMs = DatagramFragments.needsSplit(data)
+                    ? (long) DatagramFragments.fragmentCount(data) * FRAGMENT_ALLOWANCE_MS : 0;
+            this.data = data;
+            this.timeoutMs = TIMEOUT_MS + allowanceMs;
+            this.deadline = System.currentTimeMillis() + timeoutMs;
+            this.sentAt = sentAt;
+            this.allowanceNanos = allowanceMs * 1_000_000L;
+            this.retransmitAt = sentAt + firstTimeoutNanos + allowanceNanos;
+        }
+    }
 
     public NetworkManager(String host, int port) throws IOException {
+        this(host, port, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param host Адрес сервера.
+     * @param port Порт сервера.
+     * @param window Максимальное количество запросов, ожидающих ответа одновременно.
+     */
+    public NetworkManager(String host, int port, int window) throws IOException {
         this.serverAddress = new InetSocketAddress(host, port);
+        this.window = new Semaphore(Math.max(1, window));
         this.selector = Selector.open();
         this.channel = DatagramChannel.open();
         this.channel.configureBlocking(false);
+        // Ответы на несколько запросов могут прийти подряд, пока поток приема еще не проснулся.
+        this.channel.setOption(StandardSocketOptions.SO_RCVBUF, BUFFER_SIZE * 16);
+        this.channel.setOption(StandardSocketOptions.SO_SNDBUF, BUFFER_SIZE * 16);
         this.channel.register(selector, SelectionKey.OP_READ);
+        this.receiver = new Thread(this::receiveLoop, "client-receiver");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
     }
 
     /**
@@ -41,57 +126,238 @@ public class NetworkManager {
      * @throws IOException если произошел таймаут ожидания или другая сетевая ошибка.
      */
     public Response sendAndReceive(Request request) throws IOException {
-        // 1. Сериализуем и отправляем запрос
-        byte[] requestData = SerializationUtil.serialize(request);
-        channel.send(ByteBuffer.wrap(requestData), serverAddress);
+        CompletableFuture<Response> future = sendAsync(request);
         System.out.println("-> Запрос (" + request.getCommandType() + ") отправлен на сервер.");
+        Response response = await(future);
+        System.out.println("<- Получен ответ от сервера.");
+        return response;
+    }
+
+    /**
+     * Отправляет запрос, не дожидаясь ответа. Если окно заполнено, ждет, пока освободится место.
+     * @param request Объект запроса для отправки.
+     * @return Future, который завершится ответом сервера или ошибкой (таймаут, сетевая ошибка).
+     * Если запрос не удалось отправить (например, он больше {@link DatagramFragments#MAX_MESSAGE_SIZE}),
+     * ошибкой будет {@link RequestNotSentException}.
+     */
+    public CompletableFuture<Response> sendAsync(Request request) {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(new IOException("Отправка запроса была прервана.", e));
+        }
+        long id = nextRequestId.incrementAndGet();
+        request.setRequestId(id);
+        request.setClientId(clientId);
+        byte[] requestData;
+        try {
+            if (closed) throw new IOException("Сетевое соединение клиента закрыто.");
+            requestData = SerializationUtil.serialize(request);
+        } catch (IOException e) {
+            window.release();
+            return CompletableFuture.failedFuture(new RequestNotSentException(e.getMessage(), e));
+        }
+        PendingRequest entry = new PendingRequest(requestData, System.nanoTime(), rtt.nextTimeoutNanos(0));
+        pending.put(id, entry);
+        try {
+            transmit(requestData, id);
+        } catch (IOException | IllegalArgumentException e) {
+            // Первая отправка не завершилась: сервер не мог получить запрос целиком.
+            fail(id, new RequestNotSentException(e.getMessage(), e));
+        }
+        return entry.future;
+    }
+
+    private void transmit(byte[] data, long id) throws IOException {
+        if (DatagramFragments.needsSplit(data)) {
+            sendFragments(data, id);
+        } else {
+            channel.send(ByteBuffer.wrap(data), serverAddress);
+        }
+    }
 
-        // 2. Ждем ответа с таймаутом
-        int readyChannels = selector.select(TIMEOUT_MS);
-
-        if (readyChannels == 0) {
-            // Если за TIMEOUT_MS не пришло ответа, бросаем исключение
-            throw new IOException("Сервер не отвечает (таймаут " + TIMEOUT_MS + " мс).");
-        }
-
-        Set<SelectionKey> selectedKeys = selector.selectedKeys();
-        Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
-
-        while (keyIterator.hasNext()) {
-            SelectionKey key = keyIterator.next();
-            if (key.isReadable()) {
-                buffer.clear();
-                // Получаем датаграмму
-                channel.receive(buffer);
-                buffer.flip();
-
-                byte[] responseData = new byte[buffer.remaining()];
-                buffer.get(responseData);
-                keyIterator.remove(); // Удаляем обработанный ключ
-
-                try {
-                    // Десериализуем ответ
-                    Response response = (Response) SerializationUtil.deserialize(responseData);
-                    System.out.println("<- Получен ответ от сервера.");
-                    return response;
-                } catch (ClassNotFoundException | ClassCastException e) {
-                    // Эта ошибка означает, что клиент и сервер несовместимы
-                    throw new IOException("Не удалось десериализовать ответ от сервера: " + e.getMessage(), e);
+    /**
+     * Отправляет длинный запрос фрагментами, при заполненном буфере отправки ненадолго ждет его освобождения.
+     */
+    private void sendFragments(byte[] data, long messageId) throws IOException {
+        for (ByteBuffer fragment : DatagramFragments.split(data, messageId)) {
+            long deadline = System.nanoTime() + SEND_WAIT_NANOS;
+            while (channel.send(fragment, serverAddress) == 0) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("Не удалось отправить запрос: буфер отправки переполнен.");
                 }
-            } else {
-                keyIterator.remove();
+                Thread.onSpinWait();
             }
         }
-        // Если по какой-то причине мы вышли из цикла, но не получили данные - это ошибка
-        throw new IOException("Не удалось получить ответ от сервера после события чтения.");
+    }
+
+    /**
+     * Дожидается результата асинхронного запроса.
+     * @param future Future, полученный из {@link #sendAsync(Request)}.
+     * @return Ответ сервера.
+     * @throws IOException если запрос завершился ошибкой.
+     */
+    public static Response await(CompletableFuture<Response> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ожидание ответа было прервано.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return Количество запросов, ожидающих ответа.
+     */
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    /**
+     * @return Количество повторных отправок запросов с момента запуска.
+     */
+    public long getRetransmissions() {
+        return retransmissions.get();
+    }
+
+    /**
+     * @return Сглаженное время обмена с сервером в микросекундах или -1, если замеров еще не было.
+     */
+    public long getSmoothedRttMicros() {
+        return rtt.getSmoothedRttMicros();
+    }
+
+    private void receiveLoop() {
+        while (!closed) {
+            try {
+                selector.select(nextTimerDelayMs());
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    if (key.isReadable()) {
+                        drain();
+                    }
+                }
+                checkTimers();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Ошибка при получении ответа от сервера: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        while (true) {
+            buffer.clear();
+            SocketAddress sender = channel.receive(buffer);
+            if (sender == null) return;
+            buffer.flip();
+            byte[] responseData = new byte[buffer.remaining()];
+            buffer.get(responseData);
+            if (DatagramFragments.isFragment(responseData)) {
+                responseData = assembler.accept(sender, responseData);
+                if (responseData == null) continue;
+            }
+            Response response;
+            try {
+                response = (Response) SerializationUtil.deserialize(responseData);
+            } catch (ClassNotFoundException | ClassCastException | IOException e) {
+                // Эта ошибка означает, что клиент и сервер несовместимы
+                System.err.println("Не удалось десериализовать ответ от сервера: " + e.getMessage());
+                continue;
+            }
+            complete(response);
+        }
+    }
+
+    private void complete(Response response) {
+        long id = response.getRequestId();
+        if (id == 0 && pending.size() == 1) {
+            // Сервер старой версии не возвращает идентификатор: ответ однозначен, только если запрос один.
+            id = pending.keySet().iterator().next();
+        }
+        PendingRequest entry = pending.remove(id);
+        if (entry == null) {
+            return; // ответ на повторно отправленный запрос или на запрос, завершившийся по таймауту
+        }
+        window.release();
+        if (entry.retransmissions == 0) {
+            rtt.sample(System.nanoTime() - entry.sentAt);
+            retryTokens = Math.min(MAX_RETRY_TOKENS, retryTokens + RETRY_TOKEN_RATIO);
+        }
+        entry.future.complete(response);
+    }
+
+    /**
+     * @return Сколько миллисекунд поток приема может ждать датаграмм до ближайшей повторной отправки.
+     */
+    private long nextTimerDelayMs() {
+        long now = System.nanoTime();
+        long delay = TICK_MS * 1_000_000L;
+        for (PendingRequest entry : pending.values()) {
+            if (entry.retransmissions < MAX_RETRANSMISSIONS) {
+                delay = Math.min(delay, entry.retransmitAt - now);
+            }
+        }
+        return Math.max(1, (delay + 999_999) / 1_000_000);
+    }
+
+    /**
+     * Повторно отправляет запросы, интервал ожидания которых истек, и завершает ошибкой просроченные.
+     */
+    private void checkTimers() throws IOException {
+        if (pending.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        long nowNanos = System.nanoTime();
+        assembler.expire(now);
+        for (Map.Entry<Long, PendingRequest> item : pending.entrySet()) {
+            PendingRequest entry = item.getValue();
+            if (entry.deadline <= now) {
+                fail(item.getKey(), new IOException("Сервер не отвечает (таймаут " + entry.timeoutMs + " мс, повторных отправок: "
+                        + entry.retransmissions + ")."));
+            } else if (entry.retransmitAt <= nowNanos && entry.retransmissions < MAX_RETRANSMISSIONS) {
+                if (retryTokens < 1) {
+                    // Бюджет повторов исчерпан: ждем ответа на уже отправленный запрос до общего таймаута.
+                    entry.retransmitAt = nowNanos + rtt.nextTimeoutNanos(entry.retransmissions) + entry.allowanceNanos;
+                    continue;
+                }
+                retryTokens -= 1;
+                entry.retransmissions++;
+                retransmissions.incrementAndGet();
+                entry.retransmitAt = nowNanos + rtt.nextTimeoutNanos(entry.retransmissions) + entry.allowanceNanos;
+                // Сервер собирает фрагменты по идентификатору сообщения и не выполняет повтор дважды.
+                transmit(entry.data, item.getKey());
+            }
+        }
+    }
+
+    private void fail(long id, IOException error) {
+        PendingRequest entry = pending.remove(id);
+        if (entry != null) {
+            window.release();
+            entry.future.completeExceptionally(error);
+        }
     }
 
     public void close() {
+        closed = true;
         try {
             if (selector != null) selector.close();
             if (channel != null) channel.close();
         } catch (IOException e) {
             System.err.println("Ошибка при закрытии сетевых ресурсов клиента: " + e.getMessage());
         }
+        for (Long id : pending.keySet()) {
+            fail(id, new IOException("Сетевое соединение клиента закрыто."));
+        }
     }
-}
\ No newline at end of file
+}
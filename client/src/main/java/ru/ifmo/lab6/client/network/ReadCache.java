@@ -0,0 +1,199 @@
+package ru.ifmo.lab6.client.network;
+
+import ru.ifmo.lab6.command.Command;
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.Request;
+import ru.ifmo.lab6.network.Response;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш ответов на читающие команды (show, info, average_of_height, count_by_hair_color,
+ * filter_less_than_hair_color) на стороне клиента.
+ * <p>
+ * Ключ — команда и ее аргументы. Размер ограничен количеством записей и примерным объемом данных,
+ * при переполнении вытесняются давно не использованные записи (LRU). Ответ моложе {@code ttlMs}
+ * выдается без обращения к серверу. Более старый ответ перепроверяется: запрос отправляется с версией
+ * коллекции сохраненного ответа, и если она не изменилась, сервер отвечает коротким NOT_MODIFIED
+ * без данных. Кэш очищается, когда клиент сам изменяет коллекцию или когда сервер сообщает
+ * версию коллекции, отличную от версии сохраненных ответов. Не потокобезопасен.
+ */
+public class ReadCache {
+    private static final long PERSON_SIZE_ESTIMATE = 256;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMs;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long version;
+
+    private long localHits;
+    private long revalidatedHits;
+    private long misses;
+    private long invalidations;
+
+    private static final class Entry {
+        final Response response;
+        final long version;
+        final long size;
+        long validatedAt;
+
+        Entry(Response response, long version, long size, long validatedAt) {
+            this.response = response;
+            this.version = version;
+            this.size = size;
+            this.validatedAt = validatedAt;
+        }
+    }
+
+    /**
+     * @param maxEntries Максимальное количество записей (0 — кэш отключен).
+     * @param maxBytes Максимальный примерный объем сохраненных ответов в байтах.
+     * @param ttlMs Сколько миллисекунд ответ выдается без перепроверки на сервере.
+     */
+    public ReadCache(int maxEntries, long maxBytes, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Создает кэш с параметрами из системных свойств
+     * {@code lab6.client.cache.entries}, {@code lab6.client.cache.bytes} и {@code lab6.client.cache.ttlMs}.
+     */
+    public static ReadCache fromSystemProperties() {
+        return new ReadCache(Integer.getInteger("lab6.client.cache.entries", 64),
+                Long.getLong("lab6.client.cache.bytes", 32L * 1024 * 1024),
+                Long.getLong("lab6.client.cache.ttlMs", 1000));
+    }
+
+    /**
+     * Ищет сохраненный ответ перед отправкой запроса.
+     * Если ответ есть, но устарел по времени, запрос помечается его версией для перепроверки на сервере.
+     * @param request Запрос.
+     * @return Ответ, который можно показать без обращения к серверу, или null.
+     */
+    public Response lookup(Request request) {
+        if (maxEntries <= 0 || !request.getCommandType().isCacheable()) return null;
+        Entry entry = entries.get(keyOf(request));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.validatedAt < ttlMs) {
+            localHits++;
+            return entry.response;
+        }
+        request.setIfVersion(entry.version);
+        return null;
+    }
+
+    /**
+     * Обрабатывает ответ сервера: обновляет известную версию коллекции, сохраняет или подтверждает ответ.
+     * @param request Отправленный запрос.
+     * @param response Ответ сервера.
+     * @return Ответ для показа пользователю или null, если сервер подтвердил ответ,
+     * которого в кэше уже нет (запрос нужно повторить без версии).
+     */
+    public Response onResponse(Request request, Response response) {
+        CommandType type = request.getCommandType();
+        if (type.isModifying()) {
+            invalidate();
+        }
+        long responseVersion = response.getCollectionVersion();
+        if (responseVersion != 0 && responseVersion != version) {
+            if (!entries.isEmpty()) invalidate();
+            version = responseVersion;
+        }
+        if (maxEntries <= 0 || !type.isCacheable()) return response;
+
+        String key = keyOf(request);
+        if (response.getStatus() == Response.Status.NOT_MODIFIED) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            revalidatedHits++;
+            entry.validatedAt = System.currentTimeMillis();
+            return entry.response;
+        }
+        if (request.getIfVersion() != 0) {
+            misses++; // сохраненный ответ устарел: промах учитывается только сейчас, а не в lookup
+        }
+        if (response.getStatus() == Response.Status.SUCCESS && responseVersion != 0) {
+            put(key, new Entry(response, responseVersion, estimateSize(response), System.currentTimeMillis()));
+        }
+        return response;
+    }
+
+    /**
+     * Позволяет не собирать большой ответ, который все равно не будет сохранен.
+     * @param elements Количество элементов коллекции в ответе.
+     * @return true, если ответ на show с таким количеством элементов поместится в кэш.
+     */
+    public boolean canHold(int elements) {
+        return maxEntries > 0 && 64 + elements * PERSON_SIZE_ESTIMATE <= maxBytes;
+    }
+
+    /**
+     * Очищает кэш, например после выполнения скрипта, который мог изменить коллекцию.
+     */
+    public void invalidate() {
+        if (entries.isEmpty()) return;
+        entries.clear();
+        bytes = 0;
+        invalidations++;
+    }
+
+    /**
+     * @return Статистика кэша для команды cache_stats.
+     */
+    public String getStats() {
+        if (maxEntries <= 0) {
+            return "Кэш чтения отключен (lab6.client.cache.entries=0).";
+        }
+        long requests = localHits + revalidatedHits + misses;
+        return "Кэш чтения: записей " + entries.size() + "/" + maxEntries
+                + ", объем ~" + bytes / 1024 + "/" + maxBytes / 1024 + " КБ"
+                + "\nПопаданий без обращения к серверу: " + localHits
+                + "\nПопаданий после перепроверки версии: " + revalidatedHits
+                + "\nПромахов: " + misses
+                + (requests > 0 ? "\n" + String.format("Доля попаданий: %.1f%%", 100.0 * (localHits + revalidatedHits) / requests) : "")
+                + "\nСбросов кэша: " + invalidations;
+    }
+
+    private void put(String key, Entry entry) {
+        if (entry.size > maxBytes) return;
+        Entry previous = entries.put(key, entry);
+        if (previous != null) bytes -= previous.size;
+        bytes += entry.size;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().size;
+            eldest.remove();
+        }
+    }
+
+    private static String keyOf(Request request) {
+        Object args = request.getArguments();
+        if (args instanceof Command.CountByHairColor countArgs) {
+            return request.getCommandType() + ":" + countArgs.hairColor;
+        }
+        if (args instanceof Command.FilterLessThanHairColor filterArgs) {
+            return request.getCommandType() + ":" + filterArgs.hairColor;
+        }
+        return request.getCommandType().name();
+    }
+
+    private static long estimateSize(Response response) {
+        long size = 64 + (response.getMessage() != null ? response.getMessage().length() * 2L : 0);
+        if (response.getData() instanceof Collection<?> collection) {
+            size += collection.size() * PERSON_SIZE_ESTIMATE;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,18 @@
+package ru.ifmo.lab6.client.network;
+
+import java.io.IOException;
+
+/**
+ * Запрос не был передан серверу: он не сериализовался, слишком велик для передачи
+ * или не удалось отправить ни одной его полной копии. Сервер такой запрос не получал,
+ * поэтому его можно без опасений заменить другими запросами.
+ */
+public class RequestNotSentException extends IOException {
+    public RequestNotSentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public RequestNotSentException(String message) {
+        super(message);
+    }
+}
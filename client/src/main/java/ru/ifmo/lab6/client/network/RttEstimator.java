@@ -0,0 +1,69 @@
+package ru.ifmo.lab6.client.network;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Оценка времени обмена с сервером и интервала повторной отправки (по RFC 6298).
+ * <p>
+ * SRTT — сглаженное время обмена, RTTVAR — его разброс, RTO = SRTT + 4 * RTTVAR в пределах
+ * [{@value #MIN_RTO_MS}, {@value #MAX_RTO_MS}] мс. До первого замера используется {@value #INITIAL_RTO_MS} мс.
+ * Замеры берутся только по запросам, отправленным один раз (алгоритм Карна): по повторно отправленному
+ * запросу нельзя понять, на какую из отправок пришел ответ.
+ * Замеры добавляет только поток приема, интервал можно читать из любого потока.
+ */
+final class RttEstimator {
+    static final long MIN_RTO_MS = 30;
+    static final long MAX_RTO_MS = 2000;
+    static final long INITIAL_RTO_MS = 500;
+
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+    private static final double JITTER = 0.25;
+
+    private double srttNanos;
+    private double rttvarNanos;
+    private volatile long rtoNanos = INITIAL_RTO_MS * 1_000_000;
+    private volatile long samples;
+
+    /**
+     * Учитывает замер времени обмена.
+     * @param rttNanos Время от отправки запроса до получения ответа.
+     */
+    void sample(long rttNanos) {
+        if (samples == 0) {
+            srttNanos = rttNanos;
+            rttvarNanos = rttNanos / 2.0;
+        } else {
+            rttvarNanos = (1 - BETA) * rttvarNanos + BETA * Math.abs(srttNanos - rttNanos);
+            srttNanos = (1 - ALPHA) * srttNanos + ALPHA * rttNanos;
+        }
+        samples++;
+        long rto = (long) (srttNanos + 4 * rttvarNanos);
+        rtoNanos = Math.max(MIN_RTO_MS * 1_000_000, Math.min(MAX_RTO_MS * 1_000_000, rto));
+    }
+
+    /**
+     * Интервал ожидания перед очередной отправкой: RTO, удвоенный за каждую уже сделанную повторную отправку,
+     * со случайной добавкой до 25%, чтобы повторы многих клиентов не совпадали по времени.
+     * @param retransmissions Сколько раз запрос уже отправлялся повторно.
+     * @return Интервал в наносекундах.
+     */
+    long nextTimeoutNanos(int retransmissions) {
+        long backoff = Math.min(MAX_RTO_MS * 1_000_000, rtoNanos << Math.min(retransmissions, 16));
+        return backoff + (long) (backoff * JITTER * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @return Сглаженное время обмена в микросекундах или -1, если замеров еще не было.
+     */
+    long getSmoothedRttMicros() {
+        return samples == 0 ? -1 : (long) (srttNanos / 1000);
+    }
+
+    /**
+     * @return Текущий интервал повторной отправки в микросекундах.
+     */
+    long getRtoMicros() {
+        return rtoNanos / 1000;
+    }
+}
@@ -15,4 +15,11 @@ public interface InputProvider {
      * @throws NoSuchElementException если ввод был прерван или источник исчерпан.
      */
     String readLine(String prompt) throws NoSuchElementException;
-}
\ No newline at end of file
+
+    /**
+     * @return true, если ввод ведет пользователь и ему нужно показывать подсказки к полям.
+     */
+    default boolean isInteractive() {
+        return true;
+    }
+}
@@ -0,0 +1,208 @@
+package ru.ifmo.lab6.client.util;
+
+import ru.ifmo.lab6.model.Coordinates;
+import ru.ifmo.lab6.model.Location;
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.Request;
+import ru.ifmo.lab6.network.Response;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * Выводит ответы сервера в терминал.
+ * <p>
+ * Элементы коллекции дописываются в один переиспользуемый StringBuilder без промежуточных строк
+ * и пишутся в терминал через большой буфер, который сбрасывается только после порции элементов,
+ * поэтому вывод сотен тысяч элементов не упирается в форматирование и системные вызовы.
+ * Помимо полного многострочного формата поддерживается компактная таблица по строке на элемент
+ * ({@code -Dlab6.client.format=table}). Не потокобезопасен.
+ */
+public class ResponseRenderer {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String SEPARATOR = "\n---\n";
+
+    private final Writer out;
+    private final boolean table;
+    private final StringBuilder sb = new StringBuilder(1024);
+    private char[] chars = new char[1024];
+
+    /**
+     * @param terminalWriter Поток вывода терминала.
+     * @param table true — выводить элементы таблицей, false — в полном формате.
+     */
+    public ResponseRenderer(Writer terminalWriter, boolean table) {
+        this.out = new BufferedWriter(terminalWriter, BUFFER_SIZE);
+        this.table = table;
+    }
+
+    /**
+     * @return true, если системное свойство {@code lab6.client.format} требует табличного вывода.
+     */
+    public static boolean isTableFormatRequested() {
+        return "table".equalsIgnoreCase(System.getProperty("lab6.client.format", "full"));
+    }
+
+    /**
+     * Выводит ответ сервера целиком.
+     * @param response Ответ.
+     * @param request Запрос, на который получен ответ.
+     */
+    public void render(Response response, Request request) {
+        if (response.isError()) {
+            error("Ошибка от сервера: " + response.getMessage());
+            return;
+        }
+        if (response.getMessage() != null && !response.getMessage().isEmpty()) {
+            println(response.getMessage());
+        }
+        if (response.getData() != null && request.getCommandType() != CommandType.HELP) {
+            if (response.getData() instanceof Collection<?> collection) {
+                if (collection.isEmpty()) {
+                    println("Коллекция пуста.");
+                } else {
+                    renderItems(collection, true);
+                }
+            } else {
+                println(response.getData().toString());
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Выводит порцию элементов и сбрасывает буфер, чтобы вывод шел по мере получения порций.
+     * @param items Элементы.
+     * @param first true для первой порции результата: в табличном формате перед ней выводится заголовок.
+     */
+    public void renderItems(Collection<?> items, boolean first) {
+        if (table && first) {
+            sb.setLength(0);
+            appendHeader();
+            write();
+        }
+        for (Object item : items) {
+            sb.setLength(0);
+            if (item instanceof Person person) {
+                if (table) {
+                    appendRow(person);
+                } else {
+                    person.appendTo(sb).append(SEPARATOR);
+                }
+            } else {
+                sb.append(item).append(SEPARATOR);
+            }
+            write();
+        }
+        flush();
+    }
+
+    /**
+     * Выводит строку (через буфер, без немедленного сброса).
+     */
+    public void println(String line) {
+        sb.setLength(0);
+        sb.append(line).append('\n');
+        write();
+    }
+
+    /**
+     * Выводит сообщение об ошибке в поток ошибок, предварительно сбросив накопленный вывод.
+     */
+    public void error(String message) {
+        flush();
+        System.err.println(message);
+    }
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Ошибка вывода в терминал: " + e.getMessage());
+        }
+    }
+
+    private void write() {
+        int length = sb.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        sb.getChars(0, length, chars, 0);
+        try {
+            out.write(chars, 0, length);
+        } catch (IOException e) {
+            System.err.println("Ошибка вывода в терминал: " + e.getMessage());
+        }
+    }
+
+    private void appendHeader() {
+        pad("id", 8);
+        pad("имя", 20);
+        pad("x", 10);
+        pad("y", 10);
+        pad("создан", 20);
+        pad("рост", 7);
+        pad("глаза", 12);
+        pad("волосы", 12);
+        pad("национальность", 16);
+        sb.append("местоположение\n");
+    }
+
+    private void appendRow(Person person) {
+        int start = sb.length();
+        sb.append(person.getId());
+        padFrom(start, 8);
+        start = sb.length();
+        sb.append(person.getName());
+        padFrom(start, 20);
+        Coordinates coordinates = person.getCoordinates();
+        start = sb.length();
+        sb.append(coordinates != null ? coordinates.getX() : null);
+        padFrom(start, 10);
+        start = sb.length();
+        if (coordinates != null) sb.append(coordinates.getY());
+        padFrom(start, 10);
+        start = sb.length();
+        if (person.getCreationDate() != null) {
+            Person.DISPLAY_DATE_FORMATTER.formatTo(person.getCreationDate(), sb);
+        } else {
+            sb.append("N/A");
+        }
+        padFrom(start, 20);
+        start = sb.length();
+        sb.append(person.getHeight());
+        padFrom(start, 7);
+        pad(person.getEyeColor() != null ? person.getEyeColor().getRussianName() : "N/A", 12);
+        pad(person.getHairColor() != null ? person.getHairColor().getRussianName() : "N/A", 12);
+        pad(person.getNationality() != null ? person.getNationality().getRussianName() : "N/A", 16);
+        Location location = person.getLocation();
+        if (location != null) {
+            sb.append(location.getName() != null ? location.getName() : "N/A")
+                    .append(" (").append(location.getX())
+                    .append("; ").append(location.getY())
+                    .append("; ").append(location.getZ()).append(')');
+        } else {
+            sb.append("N/A");
+        }
+        sb.append('\n');
+    }
+
+    private void pad(String value, int width) {
+        int start = sb.length();
+        sb.append(value);
+        padFrom(start, width);
+    }
+
+    /**
+     * Дополняет пробелами значение, начатое с позиции start, до ширины столбца (минимум один пробел).
+     */
+    private void padFrom(int start, int width) {
+        int spaces = Math.max(1, width - (sb.length() - start));
+        for (int i = 0; i < spaces; i++) {
+            sb.append(' ');
+        }
+    }
+}
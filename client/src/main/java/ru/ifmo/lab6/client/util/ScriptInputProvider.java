@@ -5,22 +5,49 @@ import java.util.Scanner;
 
 /**
  * Реализация InputProvider для чтения из файла скрипта с помощью Scanner.
+ * Запоминает номер последней прочитанной строки, чтобы сообщения можно было привязать к месту в файле.
  */
 public class ScriptInputProvider implements InputProvider {
     private final Scanner scanner;
+    private final boolean echo;
+    private int lineNumber;
 
     public ScriptInputProvider(Scanner scanner) {
+        this(scanner, true);
+    }
+
+    /**
+     * @param scanner Источник строк скрипта.
+     * @param echo Выводить ли каждую прочитанную строку.
+     */
+    public ScriptInputProvider(Scanner scanner, boolean echo) {
         this.scanner = scanner;
+        this.echo = echo;
     }
 
     @Override
     public String readLine(String prompt) throws NoSuchElementException {
         if (scanner.hasNextLine()) {
             String line = scanner.nextLine().trim();
-            System.out.println(line);
+            lineNumber++;
+            if (echo) {
+                System.out.println(line);
+            }
             return line;
         } else {
             throw new NoSuchElementException("Конец файла скрипта.");
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean isInteractive() {
+        return false;
+    }
+
+    /**
+     * @return Номер последней прочитанной строки (с единицы).
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -2,8 +2,10 @@ package ru.ifmo.lab6.command;
 
 import ru.ifmo.lab6.model.Color;
 import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.network.Request;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 
 /**
  * Вспомогательный класс-пространство имен для хранения DTO (Data Transfer Objects)
@@ -70,4 +72,52 @@ public final class Command implements Serializable {
         public final String fileName;
         public ExecuteScript(String fileName) { this.fileName = fileName; }
     }
-}
\ No newline at end of file
+
+    /**
+     * Несколько запросов, которые сервер выполняет по порядку в одном обмене.
+     * Ответ содержит список ответов на каждый запрос в том же порядке.
+     */
+    public static class Batch implements Serializable {
+        private static final long serialVersionUID = 211L;
+        public final ArrayList<Request> requests;
+        public Batch(ArrayList<Request> requests) { this.requests = requests; }
+    }
+
+    /**
+     * Разобранный клиентом скрипт: все команды, включая команды вложенных скриптов, в порядке выполнения.
+     * Сервер выполняет их за один проход и возвращает список результатов в том же порядке.
+     */
+    public static class RunScript implements Serializable {
+        private static final long serialVersionUID = 212L;
+        public final ArrayList<Request> requests;
+        public RunScript(ArrayList<Request> requests) { this.requests = requests; }
+    }
+
+    /**
+     * Аргумент команды show для постраничного получения коллекции: элементы с id больше afterId
+     * в порядке коллекции, не больше limit штук. Первая страница запрашивается с afterId = 0.
+     */
+    public static class ShowPage implements Serializable {
+        private static final long serialVersionUID = 213L;
+        public final long afterId;
+        public final int limit;
+        public ShowPage(long afterId, int limit) { this.afterId = afterId; this.limit = limit; }
+    }
+
+    /**
+     * Данные ответа на show со страницей: элементы страницы и общий размер коллекции.
+     * В ответе на первую страницу pageKeys содержит afterId всех следующих страниц, чтобы клиент мог
+     * запросить их, не дожидаясь предыдущих; в ответах на остальные страницы массив пуст.
+     */
+    public static class PageResult implements Serializable {
+        private static final long serialVersionUID = 214L;
+        public final int total;
+        public final ArrayList<Person> persons;
+        public final long[] pageKeys;
+        public PageResult(int total, ArrayList<Person> persons, long[] pageKeys) {
+            this.total = total;
+            this.persons = persons;
+            this.pageKeys = pageKeys;
+        }
+    }
+}
@@ -50,7 +50,16 @@ public class Coordinates implements Serializable {
 
     @Override
     public String toString() {
-        return "Coordinates{x=" + x + ", y=" + y + '}';
+        return appendTo(new StringBuilder(48)).toString();
+    }
+
+    /**
+     * Дописывает строковое представление в буфер, не создавая промежуточных строк.
+     * @param sb Буфер.
+     * @return Тот же буфер.
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append("Coordinates{x=").append(x).append(", y=").append(y).append('}');
     }
 
     @Override
@@ -72,12 +72,20 @@ public class Location implements Serializable {
 
     @Override
     public String toString() {
-        return "Location{" +
-                "name='" + (name == null ? "N/A" : name) + '\'' +
-                ", x=" + x +
-                ", y=" + y +
-                ", z=" + z +
-                '}';
+        return appendTo(new StringBuilder(96)).toString();
+    }
+
+    /**
+     * Дописывает строковое представление в буфер, не создавая промежуточных строк.
+     * @param sb Буфер.
+     * @return Тот же буфер.
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append("Location{name='").append(name == null ? "N/A" : name).append('\'')
+                .append(", x=").append(x)
+                .append(", y=").append(y)
+                .append(", z=").append(z)
+                .append('}');
     }
 
     @Override
@@ -16,6 +16,8 @@ import java.util.Objects;
 @XmlAccessorType(XmlAccessType.FIELD)
 public class Person implements Comparable<Person>, Serializable {
     private static final long serialVersionUID = 3L;
+    /** Формат даты создания в строковом представлении. Форматтер неизменяем и потокобезопасен. */
+    public static final DateTimeFormatter DISPLAY_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
 
     private long id;
     private String name;
@@ -121,17 +123,28 @@ public class Person implements Comparable<Person>, Serializable {
 
     @Override
     public String toString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
-        return "Person {\n" +
-                "  id=" + id + ",\n" +
-                "  name='" + name + "',\n" +
-                "  coordinates=" + coordinates + ",\n" +
-                "  creationDate=" + (creationDate != null ? creationDate.format(formatter) : "N/A") + ",\n" +
-                "  height=" + height + ",\n" +
-                "  eyeColor=" + (eyeColor != null ? eyeColor.getRussianName() : "N/A") + ",\n" +
-                "  hairColor=" + (hairColor != null ? hairColor.getRussianName() : "N/A") + ",\n" +
-                "  nationality=" + (nationality != null ? nationality.getRussianName() : "N/A") + ",\n" +
-                "  location=" + location + "\n" +
-                '}';
+        return appendTo(new StringBuilder(320)).toString();
+    }
+
+    /**
+     * Дописывает многострочное представление элемента в буфер, не создавая промежуточных строк.
+     * Формат совпадает с {@link #toString()}.
+     * @param sb Буфер.
+     * @return Тот же буфер.
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        sb.append("Person {\n  id=").append(id)
+                .append(",\n  name='").append(name)
+                .append("',\n  coordinates=");
+        if (coordinates != null) coordinates.appendTo(sb); else sb.append("null");
+        sb.append(",\n  creationDate=");
+        if (creationDate != null) DISPLAY_DATE_FORMATTER.formatTo(creationDate, sb); else sb.append("N/A");
+        sb.append(",\n  height=").append(height)
+                .append(",\n  eyeColor=").append(eyeColor != null ? eyeColor.getRussianName() : "N/A")
+                .append(",\n  hairColor=").append(hairColor != null ? hairColor.getRussianName() : "N/A")
+                .append(",\n  nationality=").append(nationality != null ? nationality.getRussianName() : "N/A")
+                .append(",\n  location=");
+        if (location != null) location.appendTo(sb); else sb.append("null");
+        return sb.append("\n}");
     }
 }
\ No newline at end of file
@@ -13,30 +13,48 @@ public enum CommandType implements Serializable {
     HELP("help", "вывести справку по доступным командам"),
     INFO("info", "вывести информацию о коллекции"),
     SHOW("show", "вывести все элементы коллекции"),
-    CLEAR("clear", "очистить коллекцию"),
+    CLEAR("clear", "очистить коллекцию", true),
     AVERAGE_OF_HEIGHT("average_of_height", "вывести среднее значение поля height"),
 
     // Команды с аргументами
-    ADD("add {element}", "добавить новый элемент в коллекцию"),
-    UPDATE("update id {element}", "обновить значение элемента коллекции"),
-    REMOVE_BY_ID("remove_by_id id", "удалить элемент из коллекции по его id"),
-    ADD_IF_MIN("add_if_min {element}", "добавить новый элемент, если его значение меньше минимального"),
-    REMOVE_GREATER("remove_greater {element}", "удалить из коллекции все элементы, большие, чем заданный"),
-    REMOVE_LOWER("remove_lower {element}", "удалить из коллекции все элементы, меньшие, чем заданный"),
+    ADD("add {element}", "добавить новый элемент в коллекцию", true),
+    UPDATE("update id {element}", "обновить значение элемента коллекции", true),
+    REMOVE_BY_ID("remove_by_id id", "удалить элемент из коллекции по его id", true),
+    ADD_IF_MIN("add_if_min {element}", "добавить новый элемент, если его значение меньше минимального", true),
+    REMOVE_GREATER("remove_greater {element}", "удалить из коллекции все элементы, большие, чем заданный", true),
+    REMOVE_LOWER("remove_lower {element}", "удалить из коллекции все элементы, меньшие, чем заданный", true),
     COUNT_BY_HAIR_COLOR("count_by_hair_color [hairColor]", "вывести количество элементов с заданным цветом волос"),
     FILTER_LESS_THAN_HAIR_COLOR("filter_less_than_hair_color [hairColor]", "вывести элементы, цвет волос которых меньше заданного"),
+    STATS("stats", "вывести статистику обработки запросов сервером"),
+
+    // Служебные команды, которые клиент формирует сам
+    BATCH("batch", "выполнить несколько команд одним запросом", false, true),
+    RUN_SCRIPT("run_script", "выполнить разобранный клиентом скрипт за один проход", false, true),
 
     // Команды, выполняемые только на клиенте
     EXIT("exit", "завершить работу клиента (без сохранения)"),
-    EXECUTE_SCRIPT("execute_script file_name", "исполнить скрипт из файла");
+    EXECUTE_SCRIPT("execute_script file_name", "исполнить скрипт из файла"),
+    CACHE_STATS("cache_stats", "вывести статистику кэша чтения клиента");
 
 
     private final String signature;
     private final String description;
+    private final boolean modifying;
+    private final boolean service;
 
     CommandType(String signature, String description) {
+        this(signature, description, false);
+    }
+
+    CommandType(String signature, String description, boolean modifying) {
+        this(signature, description, modifying, false);
+    }
+
+    CommandType(String signature, String description, boolean modifying, boolean service) {
         this.signature = signature;
         this.description = description;
+        this.modifying = modifying;
+        this.service = service;
     }
 
     public String getSignature() {
@@ -47,12 +65,44 @@ public enum CommandType implements Serializable {
         return description;
     }
 
+    /**
+     * @return true, если команда изменяет коллекцию на сервере.
+     */
+    public boolean isModifying() {
+        return modifying;
+    }
+
+    /**
+     * @return true, если команда только читает коллекцию и ее ответ зависит лишь от аргументов
+     * и версии коллекции, поэтому его можно кэшировать на клиенте.
+     */
+    public boolean isCacheable() {
+        switch (this) {
+            case INFO:
+            case SHOW:
+            case AVERAGE_OF_HEIGHT:
+            case COUNT_BY_HAIR_COLOR:
+            case FILTER_LESS_THAN_HAIR_COLOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true, если команда служебная: пользователь не вводит ее сам, и она не показывается в справке.
+     */
+    public boolean isService() {
+        return service;
+    }
+
     /**
      * Статический метод для генерации полной справки по всем командам.
      * @return Отформатированная строка со списком всех команд и их описаний.
      */
     public static String getHelp() {
         return Arrays.stream(CommandType.values())
+                .filter(command -> !command.isService())
                 .map(command -> String.format("  %-40s - %s", command.getSignature(), command.getDescription()))
                 .collect(Collectors.joining("\n", "Доступные команды:\n", ""));
     }
@@ -0,0 +1,192 @@
+package ru.ifmo.lab6.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Передача сообщений, не помещающихся в одну датаграмму.
+ * <p>
+ * Сообщение не длиннее {@value #MAX_DATAGRAM} байт отправляется как есть. Более длинное сообщение
+ * разбивается на фрагменты по {@value #CHUNK_SIZE} байт, каждый со своим заголовком: сигнатура,
+ * идентификатор сообщения, номер фрагмента и количество фрагментов. Сериализованный объект Java
+ * начинается с байтов 0xACED, поэтому фрагмент нельзя спутать с обычным сообщением.
+ * Получатель собирает фрагменты в {@link Assembler}; если хотя бы один фрагмент потерян,
+ * сообщение отбрасывается по таймауту.
+ */
+public final class DatagramFragments {
+    public static final int MAX_DATAGRAM = 65000;
+    public static final int CHUNK_SIZE = 60000;
+    /** Максимальный размер собранного сообщения. */
+    public static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4C364652; // "L6FR"
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 4;
+    private static final long ASSEMBLY_TIMEOUT_MS = 10_000;
+    private static final int MAX_PARTIAL_MESSAGES = 64;
+
+    private DatagramFragments() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * @param data Данные сообщения.
+     * @return true, если сообщение нужно передавать фрагментами.
+     */
+    public static boolean needsSplit(byte[] data) {
+        return data.length > MAX_DATAGRAM;
+    }
+
+    /**
+     * @param data Данные сообщения.
+     * @return Количество датаграмм, которыми будет передано сообщение.
+     */
+    public static int fragmentCount(byte[] data) {
+        return needsSplit(data) ? (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE : 1;
+    }
+
+    /**
+     * Разбивает сообщение на фрагменты.
+     * @param data Данные сообщения.
+     * @param messageId Идентификатор сообщения, уникальный для отправителя.
+     * @return Датаграммы фрагментов в порядке отправки.
+     */
+    public static List<ByteBuffer> split(byte[] data, long messageId) {
+        if (data.length > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Сообщение слишком велико для передачи: " + data.length + " байт.");
+        }
+        int count = (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        List<ByteBuffer> fragments = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int offset = index * CHUNK_SIZE;
+            int length = Math.min(CHUNK_SIZE, data.length - offset);
+            ByteBuffer fragment = ByteBuffer.allocate(HEADER_SIZE + length);
+            fragment.putInt(MAGIC).putLong(messageId).putInt(index).putInt(count);
+            fragment.put(data, offset, length);
+            fragment.flip();
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+
+    /**
+     * @param datagram Полученная датаграмма.
+     * @return true, если это фрагмент длинного сообщения.
+     */
+    public static boolean isFragment(byte[] datagram) {
+        return datagram.length >= HEADER_SIZE && ByteBuffer.wrap(datagram).getInt() == MAGIC;
+    }
+
+    /**
+     * Собирает сообщения из фрагментов. Не потокобезопасен.
+     * @param <S> Тип адреса отправителя.
+     */
+    public static final class Assembler<S> {
+        private final Map<Key<S>, Partial> partials = new HashMap<>();
+
+        /**
+         * Принимает фрагмент.
+         * @param sender Адрес отправителя.
+         * @param datagram Фрагмент (см. {@link #isFragment(byte[])}).
+         * @return Собранное сообщение, если это был его последний недостающий фрагмент, иначе null.
+         */
+        public byte[] accept(S sender, byte[] datagram) {
+            long now = System.currentTimeMillis();
+            expire(now);
+            ByteBuffer header = ByteBuffer.wrap(datagram);
+            header.getInt();
+            long messageId = header.getLong();
+            int index = header.getInt();
+            int count = header.getInt();
+            if (count <= 0 || index < 0 || index >= count || (long) count * CHUNK_SIZE > MAX_MESSAGE_SIZE + CHUNK_SIZE) {
+                return null;
+            }
+            Key<S> key = new Key<>(sender, messageId);
+            Partial partial = partials.get(key);
+            if (partial == null) {
+                if (partials.size() >= MAX_PARTIAL_MESSAGES) {
+                    return null;
+                }
+                partial = new Partial(count, now);
+                partials.put(key, partial);
+            }
+            if (partial.chunks.length != count || partial.chunks[index] != null) {
+                return null;
+            }
+            byte[] chunk = new byte[datagram.length - HEADER_SIZE];
+            System.arraycopy(datagram, HEADER_SIZE, chunk, 0, chunk.length);
+            partial.chunks[index] = chunk;
+            partial.size += chunk.length;
+            if (++partial.received < count) {
+                return null;
+            }
+            partials.remove(key);
+            byte[] message = new byte[partial.size];
+            int offset = 0;
+            for (byte[] part : partial.chunks) {
+                System.arraycopy(part, 0, message, offset, part.length);
+                offset += part.length;
+            }
+            return message;
+        }
+
+        /**
+         * Отбрасывает сообщения, фрагменты которых перестали приходить.
+         * @param now Текущее время в миллисекундах.
+         */
+        public void expire(long now) {
+            if (partials.isEmpty()) return;
+            Iterator<Partial> iterator = partials.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().startedAt > ASSEMBLY_TIMEOUT_MS) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        /**
+         * @return Количество сообщений, собираемых в данный момент.
+         */
+        public int getPending() {
+            return partials.size();
+        }
+    }
+
+    private static final class Partial {
+        final byte[][] chunks;
+        final long startedAt;
+        int received;
+        int size;
+
+        Partial(int count, long startedAt) {
+            this.chunks = new byte[count][];
+            this.startedAt = startedAt;
+        }
+    }
+
+    private static final class Key<S> {
+        final S sender;
+        final long messageId;
+
+        Key(S sender, long messageId) {
+            this.sender = sender;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key<?> other)) return false;
+            return messageId == other.messageId && Objects.equals(sender, other.sender);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sender, messageId);
+        }
+    }
+}
@@ -4,7 +4,11 @@ import java.io.Serializable;
 
 /**
  * Объект-контейнер для запроса от клиента к серверу.
- * Содержит тип команды и её аргументы.
+ * Содержит тип команды, её аргументы и идентификатор запроса.
+ * Идентификатор назначается клиентом и возвращается сервером в ответе,
+ * поэтому клиент может отправить несколько запросов, не дожидаясь ответов.
+ * Вместе с идентификатором клиента он однозначно определяет запрос: повторно отправленный запрос
+ * сервер узнает и не выполняет второй раз.
  * Реализует Serializable для передачи по сети.
  */
 public class Request implements Serializable {
@@ -12,6 +16,9 @@ public class Request implements Serializable {
 
     private final CommandType commandType;
     private final Serializable arguments;
+    private long requestId;
+    private long ifVersion;
+    private long clientId;
 
     public Request(CommandType commandType, Serializable arguments) {
         this.commandType = commandType;
@@ -29,4 +36,38 @@ public class Request implements Serializable {
     public Serializable getArguments() {
         return arguments;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return Идентификатор запроса или 0, если клиент его не назначил.
+     */
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * @return Версия коллекции, для которой у клиента уже есть ответ на этот запрос (0 — нет).
+     * Если версия не изменилась, сервер отвечает {@link Response.Status#NOT_MODIFIED} без данных.
+     */
+    public long getIfVersion() {
+        return ifVersion;
+    }
+
+    public void setIfVersion(long ifVersion) {
+        this.ifVersion = ifVersion;
+    }
+
+    /**
+     * @return Случайный идентификатор клиента, отправившего запрос (0, если клиент его не назначил).
+     */
+    public long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(long clientId) {
+        this.clientId = clientId;
+    }
+}
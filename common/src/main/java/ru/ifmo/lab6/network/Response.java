@@ -4,7 +4,9 @@ import java.io.Serializable;
 
 /**
  * Объект-контейнер для ответа от сервера клиенту.
- * Содержит статус выполнения, сообщение и, возможно, какие-либо данные.
+ * Содержит статус выполнения, сообщение, возможно, какие-либо данные,
+ * идентификатор запроса, на который дан ответ, версию коллекции на момент ответа
+ * и идентификатор трассировки запроса на сервере.
  * Реализует Serializable для передачи по сети.
  */
 public class Response implements Serializable {
@@ -12,12 +14,22 @@ public class Response implements Serializable {
 
     public enum Status {
         SUCCESS,
-        ERROR
+        ERROR,
+        /** Данные не изменились с версии, указанной в запросе: клиент может использовать сохраненный ответ. */
+        NOT_MODIFIED,
+        /**
+         * Сервер не поддерживает команду или не смог разобрать запрос и ее аргументы; команда не выполнялась,
+         * поэтому ее можно повторить в другом виде.
+         */
+        UNSUPPORTED
     }
 
     private final Status status;
     private final String message;
     private final Serializable data;
+    private long requestId;
+    private long collectionVersion;
+    private long traceId;
 
     public Response(Status status, String message, Serializable data) {
         this.status = status;
@@ -40,4 +52,46 @@ public class Response implements Serializable {
     public Serializable getData() {
         return data;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return true, если команда не выполнена: ошибка выполнения или неподдерживаемая команда.
+     */
+    public boolean isError() {
+        return status == Status.ERROR || status == Status.UNSUPPORTED;
+    }
+
+    /**
+     * @return Идентификатор запроса, на который дан ответ (0, если он неизвестен).
+     */
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * @return Версия коллекции на момент ответа (0, если сервер ее не сообщил).
+     * Версия меняется при каждом изменении коллекции и при перезапуске сервера.
+     */
+    public long getCollectionVersion() {
+        return collectionVersion;
+    }
+
+    public void setCollectionVersion(long collectionVersion) {
+        this.collectionVersion = collectionVersion;
+    }
+
+    /**
+     * @return Идентификатор трассировки, под которым сервер записал запрос в свои журналы
+     * (в том числе в журнал медленных запросов), или 0, если сервер его не сообщил.
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(long traceId) {
+        this.traceId = traceId;
+    }
+}
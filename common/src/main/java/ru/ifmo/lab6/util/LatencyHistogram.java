@@ -0,0 +1,129 @@
+package ru.ifmo.lab6.util;
+
+import java.util.Arrays;
+
+/**
+ * Гистограмма задержек с логарифмически-линейными корзинами (по схеме HdrHistogram).
+ * <p>
+ * Значения до {@value #SUB_BUCKETS} хранятся точно, дальше каждый интервал [2^k, 2^(k+1)) делится
+ * на {@value #SUB_BUCKETS} / 2 равных корзин, поэтому относительная погрешность не превышает 1/64 (~1,6%)
+ * при любом значении. Запись — одно вычисление индекса и инкремент без выделения памяти.
+ * Единицы измерения выбирает вызывающий код (например, микросекунды); значения больше
+ * {@link #MAX_VALUE} учитываются как {@link #MAX_VALUE}. Не потокобезопасна: каждый поток пишет
+ * в свою гистограмму, а для отчета гистограммы объединяются через {@link #add(LatencyHistogram)}.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int MAX_VALUE_BITS = 34;
+
+    /**
+     * Наибольшее различимое значение (около 4,7 часа в микросекундах).
+     */
+    public static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private final long[] counts = new long[indexOf(MAX_VALUE) + 1];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Учитывает одно значение.
+     * @param value Значение (отрицательные учитываются как 0).
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, MAX_VALUE));
+        counts[indexOf(clamped)]++;
+        totalCount++;
+        sum += clamped;
+        if (clamped < min) min = clamped;
+        if (clamped > max) max = clamped;
+    }
+
+    /**
+     * Добавляет к этой гистограмме значения другой.
+     * @param other Гистограмма с тем же разбиением.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Удаляет все значения.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * @return Копия гистограммы (например, для отчета из другого потока).
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * @param percentile Процентиль от 0 до 100.
+     * @return Значение, не меньше которого {@code percentile}% значений (верхняя граница корзины,
+     * но не больше максимального значения), или 0, если значений нет.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int bucket = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return bucket * HALF + (int) (value >>> bucket);
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int bucket = (index - HALF) / HALF;
+        long subBucket = index - (long) bucket * HALF;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
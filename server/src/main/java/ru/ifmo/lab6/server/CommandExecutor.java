@@ -5,9 +5,14 @@ import ru.ifmo.lab6.model.Person;
 import ru.ifmo.lab6.network.CommandType;
 import ru.ifmo.lab6.network.Request;
 import ru.ifmo.lab6.network.Response;
+import ru.ifmo.lab6.server.events.CommandExecutedEvent;
 import ru.ifmo.lab6.server.managers.CollectionManager;
+import ru.ifmo.lab6.server.replication.ReplicaClient;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.TreeSet;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import java.util.ArrayList;
@@ -21,35 +26,127 @@ import java.util.stream.Collectors;
  */
 public class CommandExecutor {
     private static final Logger LOGGER = Logger.getLogger(CommandExecutor.class.getName());
+    private static final int MAX_PAGE_SIZE = 10_000;
+    /** Наибольшее число элементов в результате одной команды пакета или скрипта, как в странице show клиента. */
+    private static final int MAX_BATCH_RESULT_ITEMS = 1000;
     private final CollectionManager collectionManager;
+    private ReplicaClient replica;
+    private ServerMetrics metrics;
 
     public CommandExecutor(CollectionManager collectionManager) {
         this.collectionManager = collectionManager;
     }
 
+    /**
+     * Переводит исполнителя в режим реплики: команды, изменяющие коллекцию, отклоняются,
+     * а info дополняется состоянием репликации.
+     * @param replica Клиент репликации.
+     */
+    public void setReplica(ReplicaClient replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * Подключает статистику сервера, которую выводит команда stats.
+     * @param metrics Статистика сервера.
+     */
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Выполняет запрос и возвращает ответ.
      * @param request Запрос от клиента.
+     * @param traceId Идентификатор трассировки запроса; записывается в ответ и в событие JFR.
      * @return Ответ сервера.
      */
-    public Response execute(Request request) {
+    public Response execute(Request request, long traceId) {
+        CommandExecutedEvent event = new CommandExecutedEvent();
+        event.begin();
+        Response response;
+        long ifVersion = request.getIfVersion();
+        if (ifVersion != 0 && ifVersion == collectionManager.getVersion() && isRevalidatable(request.getCommandType())) {
+            response = new Response(Response.Status.NOT_MODIFIED, "Данные не изменились.");
+            response.setCollectionVersion(ifVersion);
+        } else {
+            response = execute(request, Level.INFO);
+            response.setCollectionVersion(collectionManager.getVersion());
+        }
+        response.setTraceId(traceId);
+        if (event.shouldCommit()) {
+            event.traceId = traceId;
+            event.command = request.getCommandType().name();
+            event.status = response.getStatus().name();
+            event.resultSize = resultSize(response.getData());
+            event.commit();
+        }
+        return response;
+    }
+
+    /**
+     * @return Количество элементов в данных ответа: размер коллекции или страницы, 1 для одиночного объекта, 0 без данных.
+     */
+    private static int resultSize(Object data) {
+        if (data == null) return 0;
+        if (data instanceof Command.PageResult page) return page.persons.size();
+        if (data instanceof Collection<?> collection) return collection.size();
+        return 1;
+    }
+
+    /**
+     * Ответ на info реплики и info во время построения индексов меняется без изменения коллекции,
+     * поэтому такие запросы всегда выполняются заново.
+     */
+    private boolean isRevalidatable(CommandType type) {
+        if (!type.isCacheable()) return false;
+        return type != CommandType.INFO || (replica == null && collectionManager.isIndexReady());
+    }
+
+    /**
+     * @param logLevel Уровень журнала для сообщения о выполнении команды: команды пакетов и скриптов
+     *                 журналируются подробно только на уровне FINE, чтобы длинный скрипт не упирался в вывод журнала.
+     */
+    private Response execute(Request request, Level logLevel) {
         final CommandType type = request.getCommandType();
         final Object args = request.getArguments();
-        LOGGER.info("Выполнение команды " + type);
+        if (LOGGER.isLoggable(logLevel)) {
+            LOGGER.log(logLevel, "Выполнение команды " + type);
+        }
+
+        if (replica != null && type.isModifying()) {
+            return new Response(Response.Status.ERROR, "Сервер работает как реплика и доступен только для чтения. "
+                    + "Изменения выполняйте на основном сервере " + replica.getPrimary().getHostString()
+                    + ":" + replica.getPrimary().getPort() + ".");
+        }
 
         try {
             switch (type) {
                 case HELP:
                     String helpMessage = getHelpMessage();
                     ArrayList<String> commandSignatures = Arrays.stream(CommandType.values())
+                            .filter(command -> !command.isService())
                             .map(CommandType::getSignature)
                             .map(s -> s.split(" ")[0])
                             .collect(Collectors.toCollection(ArrayList::new));
                     return new Response(Response.Status.SUCCESS, helpMessage, commandSignatures);
                 case INFO:
-                    return new Response(Response.Status.SUCCESS, collectionManager.getInfo());
+                    String info = collectionManager.getInfo();
+                    if (replica != null) {
+                        info += "\n" + replica.getStatus();
+                    }
+                    return new Response(Response.Status.SUCCESS, info);
                 case SHOW:
+                    if (args instanceof Command.ShowPage page) {
+                        int limit = Math.max(0, Math.min(page.limit, MAX_PAGE_SIZE));
+                        Command.PageResult result = new Command.PageResult(collectionManager.getCollection().size(),
+                                collectionManager.getPage(page.afterId, limit),
+                                page.afterId <= 0 ? collectionManager.getPageKeys(limit) : new long[0]);
+                        return new Response(Response.Status.SUCCESS, "Элементы коллекции:", result);
+                    }
                     return new Response(Response.Status.SUCCESS, "Элементы коллекции:", collectionManager.getCollection());
+                case STATS:
+                    return new Response(Response.Status.SUCCESS,
+                            metrics != null ? metrics.getReport() : "Статистика сервера не собирается.");
                 case CLEAR:
                     return new Response(Response.Status.SUCCESS, collectionManager.clear());
                 case AVERAGE_OF_HEIGHT:
@@ -109,18 +206,72 @@ public class CommandExecutor {
                     }
                     break;
 
+                case BATCH:
+                    if (args instanceof Command.Batch batchArgs) {
+                        return executeAll(batchArgs.requests);
+                    }
+                    break;
+
+                case RUN_SCRIPT:
+                    if (args instanceof Command.RunScript scriptArgs) {
+                        long start = System.nanoTime();
+                        Response result = executeAll(scriptArgs.requests);
+                        LOGGER.info("Выполнен скрипт: команд " + scriptArgs.requests.size() + " за "
+                                + (System.nanoTime() - start) / 1_000_000 + " мс");
+                        return result;
+                    }
+                    break;
+
                 default:
-                    return new Response(Response.Status.ERROR, "Неизвестная или неподдерживаемая команда на сервере: " + type);
+                    return new Response(Response.Status.UNSUPPORTED, "Неизвестная или неподдерживаемая команда на сервере: " + type);
             }
 
-            return new Response(Response.Status.ERROR, "Некорректный тип аргумента для команды " + type);
+            return new Response(Response.Status.UNSUPPORTED, "Некорректный тип аргумента для команды " + type);
 
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Некорректные данные в команде " + type + ": " + e.getMessage());
+            return new Response(Response.Status.ERROR, "Некорректные данные: " + e.getMessage());
         } catch (Exception e) {
             LOGGER.severe("Ошибка при выполнении команды " + type + ": " + e.getMessage());
             return new Response(Response.Status.ERROR, "Внутренняя ошибка сервера при выполнении команды: " + e.getMessage());
         }
     }
 
+    /**
+     * Выполняет запросы пакета или скрипта по порядку за один проход. Вложенные пакеты и скрипты не допускаются.
+     * @param requests Запросы.
+     * @return Ответ со списком ответов на каждый запрос.
+     */
+    private Response executeAll(ArrayList<Request> requests) {
+        ArrayList<Response> responses = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            if (request.getCommandType().isService()) {
+                responses.add(new Response(Response.Status.ERROR, "Вложенные пакеты команд не поддерживаются."));
+            } else {
+                responses.add(limitResult(execute(request, Level.FINE)));
+            }
+        }
+        return new Response(Response.Status.SUCCESS, "Выполнено команд: " + responses.size(), responses);
+    }
+
+    /**
+     * Ограничивает результат одной команды пакета или скрипта: коллекция больше
+     * {@value #MAX_BATCH_RESULT_ITEMS} элементов заменяется ее началом, чтобы ответ на все команды
+     * поместился в одно сообщение. Полный результат выводится при выполнении команды отдельно.
+     */
+    private static Response limitResult(Response response) {
+        if (!(response.getData() instanceof Collection<?> items) || items.size() <= MAX_BATCH_RESULT_ITEMS) {
+            return response;
+        }
+        ArrayList<Object> head = new ArrayList<>(MAX_BATCH_RESULT_ITEMS);
+        Iterator<?> iterator = items.iterator();
+        while (head.size() < MAX_BATCH_RESULT_ITEMS) {
+            head.add(iterator.next());
+        }
+        return new Response(response.getStatus(), response.getMessage() + " Показаны первые " + MAX_BATCH_RESULT_ITEMS
+                + " из " + items.size() + ", полный результат выводится при выполнении команды отдельно.", head);
+    }
+
     /**
      * Генерирует и возвращает справку по командам.
      * @return Строка со справкой.
@@ -0,0 +1,127 @@
+package ru.ifmo.lab6.server;
+
+import ru.ifmo.lab6.network.Request;
+import ru.ifmo.lab6.network.Response;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш ответов на недавние изменяющие запросы для защиты от повторного выполнения.
+ * <p>
+ * Клиент повторяет запрос, если не получил ответ, но потеряться мог и сам ответ: тогда сервер получит
+ * запрос, который уже выполнил. Запрос определяется идентификатором клиента и номером запроса
+ * у этого клиента. Для каждого клиента хранится не более {@code maxPerClient} последних ответов,
+ * всего клиентов не более {@code maxClients}; ответы старше {@code ttlMs} и клиенты, от которых давно
+ * не было запросов, удаляются. Используется только в потоке цикла событий.
+ */
+public class IdempotencyCache {
+    private final int maxPerClient;
+    private final int maxClients;
+    private final long ttlMs;
+    private final LinkedHashMap<Long, ClientResponses> clients = new LinkedHashMap<>(16, 0.75f, true);
+    private long lastCleanup;
+
+    private long duplicates;
+    private long evictedClients;
+
+    private static final class CachedResponse {
+        final Response response;
+        final long storedAt;
+
+        CachedResponse(Response response, long storedAt) {
+            this.response = response;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final class ClientResponses {
+        final LinkedHashMap<Long, CachedResponse> responses = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedResponse> eldest) {
+                return size() > maxPerClient;
+            }
+        };
+        long lastSeen;
+    }
+
+    /**
+     * @param maxPerClient Сколько последних ответов хранить для одного клиента.
+     * @param maxClients Сколько клиентов отслеживать одновременно.
+     * @param ttlMs Сколько миллисекунд хранить ответ.
+     */
+    public IdempotencyCache(int maxPerClient, int maxClients, long ttlMs) {
+        this.maxPerClient = maxPerClient;
+        this.maxClients = maxClients;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * @param request Полученный запрос.
+     * @return Сохраненный ответ, если запрос уже выполнялся, иначе null.
+     */
+    public Response lookup(Request request) {
+        if (request.getClientId() == 0 || maxPerClient <= 0) return null;
+        long now = System.currentTimeMillis();
+        cleanup(now);
+        ClientResponses client = clients.get(request.getClientId());
+        if (client == null) return null;
+        client.lastSeen = now;
+        CachedResponse cached = client.responses.get(request.getRequestId());
+        if (cached == null || now - cached.storedAt > ttlMs) return null;
+        duplicates++;
+        return cached.response;
+    }
+
+    /**
+     * Запоминает ответ на выполненный запрос. Сохраняются только ответы на запросы, изменяющие коллекцию
+     * (и пакеты команд): повторное чтение ничего не меняет, и хранить его результат незачем.
+     * @param request Выполненный запрос.
+     * @param response Ответ на него.
+     */
+    public void store(Request request, Response response) {
+        if (request.getClientId() == 0 || maxPerClient <= 0) return;
+        if (!request.getCommandType().isModifying() && !request.getCommandType().isService()) return;
+        long now = System.currentTimeMillis();
+        ClientResponses client = clients.get(request.getClientId());
+        if (client == null) {
+            client = new ClientResponses();
+            clients.put(request.getClientId(), client);
+            Iterator<ClientResponses> eldest = clients.values().iterator();
+            while (clients.size() > maxClients && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictedClients++;
+            }
+        }
+        client.lastSeen = now;
+        client.responses.put(request.getRequestId(), new CachedResponse(response, now));
+    }
+
+    private void cleanup(long now) {
+        if (now - lastCleanup < ttlMs) return;
+        lastCleanup = now;
+        Iterator<ClientResponses> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            ClientResponses client = iterator.next();
+            if (now - client.lastSeen > ttlMs) {
+                iterator.remove();
+            } else {
+                client.responses.values().removeIf(cached -> now - cached.storedAt > ttlMs);
+            }
+        }
+    }
+
+    /**
+     * @return Описание состояния кэша для консоли сервера.
+     */
+    public String getStatus() {
+        int responses = 0;
+        for (ClientResponses client : clients.values()) {
+            responses += client.responses.size();
+        }
+        return "Защита от повторов: клиентов " + clients.size() + ", сохраненных ответов " + responses
+                + ", отвечено из кэша " + duplicates + ", вытеснено клиентов " + evictedClients + ".";
+    }
+}
@@ -1,14 +1,28 @@
 package ru.ifmo.lab6.server;
 
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.BinarySnapshotManager;
 import ru.ifmo.lab6.server.managers.CollectionManager;
 import ru.ifmo.lab6.server.managers.XmlFileManager;
+import ru.ifmo.lab6.server.persistence.AutosaveScheduler;
+import ru.ifmo.lab6.server.persistence.MutationJournal;
+import ru.ifmo.lab6.server.persistence.SnapshotService;
+import ru.ifmo.lab6.server.persistence.SnapshotStore;
+import ru.ifmo.lab6.server.replication.ReplicaClient;
+import ru.ifmo.lab6.server.replication.ReplicationServer;
 import ru.ifmo.lab6.server.util.LoggerSetup;
+import ru.ifmo.lab6.server.util.ServerConfig;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.Pipe;
+import java.nio.file.Paths;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,7 +32,31 @@ import java.util.logging.Logger;
  */
 public class Main {
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
+    private static final boolean JOURNAL_ENABLED = ServerConfig.getBoolean("lab6.journal.enabled", true);
+    private static final long JOURNAL_GROUP_DELAY_MS = ServerConfig.getLong("lab6.journal.groupDelayMs", 0);
+    private static final long AUTOSAVE_CHANGES = ServerConfig.getLong("lab6.autosave.changes", JOURNAL_ENABLED ? 100_000 : 1_000);
+    private static final long AUTOSAVE_INTERVAL_SEC = ServerConfig.getLong("lab6.autosave.intervalSec", 300);
+    private static final String SNAPSHOT_FORMAT = ServerConfig.getString("lab6.snapshot.format", "xml");
+    private static final int REPLICATION_PORT = ServerConfig.getInt("lab6.replication.port", 0);
+    private static final String REPLICATION_BIND_ADDRESS = ServerConfig.getString("lab6.replication.bindAddress", "127.0.0.1");
+    private static final int REPLICATION_MAX_BACKLOG = ServerConfig.getInt("lab6.replication.maxBacklog", 1_000_000);
+    private static final String REPLICA_OF = ServerConfig.getString("lab6.replica.of", null);
+    private static final int IDEMPOTENCY_MAX_PER_CLIENT = ServerConfig.getInt("lab6.idempotency.maxPerClient", 1024);
+    private static final int IDEMPOTENCY_MAX_CLIENTS = ServerConfig.getInt("lab6.idempotency.maxClients", 10_000);
+    private static final long IDEMPOTENCY_TTL_SEC = ServerConfig.getLong("lab6.idempotency.ttlSec", 60);
+    private static final int METRICS_PORT = ServerConfig.getInt("lab6.metrics.port", 0);
+    private static final String METRICS_BIND_ADDRESS = ServerConfig.getString("lab6.metrics.bindAddress", "127.0.0.1");
+    private static final long SLOW_LOG_THRESHOLD_MS = ServerConfig.getLong("lab6.slowlog.thresholdMs", 100);
+    private static final String SLOW_LOG_FILE = ServerConfig.getString("lab6.slowlog.file", "slow.log");
+    private static final long SHUTDOWN_WAIT_SEC = 10;
     private volatile boolean running = true;
+    private volatile NetworkManager eventLoop;
+    private final CountDownLatch loopStopped = new CountDownLatch(1);
+    private ReplicationServer replicationServer;
+    private MetricsHttpServer metricsServer;
+    private final IdempotencyCache idempotencyCache =
+            new IdempotencyCache(IDEMPOTENCY_MAX_PER_CLIENT, IDEMPOTENCY_MAX_CLIENTS, IDEMPOTENCY_TTL_SEC * 1000);
+    private final ServerMetrics metrics = new ServerMetrics();
 
     private final int port;
     private final String filePath;
@@ -29,51 +67,257 @@ public class Main {
     }
 
     public void start() {
+        long loadStart = System.nanoTime();
         XmlFileManager xmlFileManager = new XmlFileManager(filePath);
-        CollectionManager collectionManager = new CollectionManager(xmlFileManager.load());
+        SnapshotStore snapshotStore = xmlFileManager;
+        TreeSet<Person> initialCollection;
+        if ("binary".equalsIgnoreCase(SNAPSHOT_FORMAT)) {
+            BinarySnapshotManager binaryManager = new BinarySnapshotManager(xmlFileManager.getFilePath() + ".snap");
+            snapshotStore = binaryManager;
+            initialCollection = loadBinary(binaryManager, xmlFileManager);
+        } else {
+            initialCollection = xmlFileManager.load();
+        }
+        MutationJournal journal = openJournal(xmlFileManager, initialCollection);
+        long loadMillis = (System.nanoTime() - loadStart) / 1_000_000;
+        CollectionManager collectionManager = new CollectionManager(initialCollection);
+        if (journal != null) {
+            collectionManager.addListener(journal);
+            journal.start();
+        }
+        SnapshotService snapshotService = new SnapshotService(snapshotStore, journal);
+        AutosaveScheduler autosave = new AutosaveScheduler(collectionManager, snapshotService,
+                AUTOSAVE_CHANGES, AUTOSAVE_INTERVAL_SEC * 1000);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            xmlFileManager.save(collectionManager.getCollection());
-            LOGGER.info("Коллекция сохранена при завершении работы.");
+            boolean stopped = stopEventLoop();
+            autosave.close();
+            if (!stopped && journal != null) {
+                // Снимок параллельно с изменениями мог бы усечь из журнала еще не попавшие в него записи.
+                LOGGER.warning("Цикл событий не остановился за " + SHUTDOWN_WAIT_SEC
+                        + " с. Снимок при завершении пропущен, изменения сохранены в журнале.");
+            } else if (snapshotService.getPendingChanges(collectionManager) == 0) {
+                LOGGER.info("Коллекция не изменялась с последнего сохранения, сохранение при завершении пропущено.");
+            } else if (snapshotService.saveNow(collectionManager)) {
+                LOGGER.info("Коллекция сохранена при завершении работы.");
+            }
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Ошибка при закрытии журнала изменений", e);
+                }
+            }
         }));
 
 
         try {
             final Pipe consolePipe = Pipe.open();
 
-            try (NetworkManager networkManager = new NetworkManager(port, new CommandExecutor(collectionManager));
+            CommandExecutor commandExecutor = new CommandExecutor(collectionManager);
+            commandExecutor.setMetrics(metrics);
+            try (NetworkManager networkManager = new NetworkManager(port, commandExecutor);
                  Pipe.SourceChannel consoleSource = consolePipe.source();
                  Pipe.SinkChannel consoleSink = consolePipe.sink()) {
 
                 networkManager.setup();
+                eventLoop = networkManager;
+                networkManager.setIdempotencyCache(idempotencyCache);
+                networkManager.setMetrics(metrics);
+                networkManager.setSlowLog(createSlowLog());
+                if (journal != null) {
+                    networkManager.setJournal(journal);
+                    journal.setSyncListener(networkManager::wakeup);
+                }
                 networkManager.registerConsoleChannel(consoleSource,
-                        (command) -> handleConsoleCommand(command, collectionManager, xmlFileManager, networkManager));
+                        (command) -> handleConsoleCommand(command, collectionManager, snapshotService, autosave,
+                                xmlFileManager, networkManager));
+                autosave.start(networkManager);
+                collectionManager.buildIndexesAsync(networkManager);
+                if (REPLICATION_PORT > 0) {
+                    replicationServer = new ReplicationServer(REPLICATION_PORT, REPLICATION_BIND_ADDRESS,
+                            collectionManager, networkManager, REPLICATION_MAX_BACKLOG);
+                    replicationServer.start();
+                }
+                if (METRICS_PORT > 0) {
+                    metricsServer = new MetricsHttpServer(METRICS_PORT, METRICS_BIND_ADDRESS, networkManager, metrics, collectionManager);
+                    metricsServer.setPersistence(snapshotService, journal, loadMillis);
+                    metricsServer.start();
+                }
 
-                Thread consoleInputThread = new Thread(() -> readConsoleInput(consoleSink));
-                consoleInputThread.setDaemon(true);
-                consoleInputThread.start();
+                startConsoleThread(consoleSink);
 
                 LOGGER.info("Сервер запущен. Введите 'save' для сохранения или 'exit' для завершения.");
 
                 while (running) {
                     networkManager.processEvents();
+                    autosave.poll();
                 }
 
             }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Произошла критическая ошибка в главном цикле сервера", e);
         } finally {
+            loopStopped.countDown();
+            if (replicationServer != null) {
+                try {
+                    replicationServer.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Ошибка при остановке репликации", e);
+                }
+            }
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
             LOGGER.info("Сервер остановлен.");
         }
     }
 
+    /**
+     * Останавливает цикл событий и ждет его завершения. Вызывается из обработчика завершения JVM
+     * перед сохранением снимка: пока цикл выполняет запросы, коллекция продолжает меняться.
+     * @return true, если цикл событий остановлен.
+     */
+    private boolean stopEventLoop() {
+        running = false;
+        NetworkManager loop = eventLoop;
+        if (loop != null) {
+            loop.wakeup();
+        }
+        try {
+            return loopStopped.await(SHUTDOWN_WAIT_SEC, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Запускает сервер в режиме реплики: коллекция берется с основного сервера и обновляется
+     * потоком его изменений, команды, изменяющие коллекцию, отклоняются. Файл коллекции не используется.
+     * @param primary Адрес репликации основного сервера.
+     */
+    public void startReplica(InetSocketAddress primary) {
+        ReplicaClient replica = new ReplicaClient(primary);
+        try {
+            LOGGER.info("Режим реплики: получение снимка с основного сервера " + primary + "...");
+            CollectionManager collectionManager = new CollectionManager(replica.bootstrap());
+            CommandExecutor commandExecutor = new CommandExecutor(collectionManager);
+            commandExecutor.setReplica(replica);
+            commandExecutor.setMetrics(metrics);
+            final Pipe consolePipe = Pipe.open();
+
+            try (NetworkManager networkManager = new NetworkManager(port, commandExecutor);
+                 Pipe.SourceChannel consoleSource = consolePipe.source();
+                 Pipe.SinkChannel consoleSink = consolePipe.sink()) {
+
+                networkManager.setup();
+                networkManager.setMetrics(metrics);
+                networkManager.setSlowLog(createSlowLog());
+                networkManager.registerConsoleChannel(consoleSource,
+                        (command) -> handleReplicaConsoleCommand(command, replica, networkManager));
+                collectionManager.buildIndexesAsync(networkManager);
+                replica.startTailing(collectionManager, networkManager);
+                if (METRICS_PORT > 0) {
+                    metricsServer = new MetricsHttpServer(METRICS_PORT, METRICS_BIND_ADDRESS, networkManager, metrics, collectionManager);
+                    metricsServer.start();
+                }
+                startConsoleThread(consoleSink);
+
+                LOGGER.info("Реплика запущена. Введите 'status' для просмотра отставания или 'exit' для завершения.");
+
+                while (running) {
+                    networkManager.processEvents();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Произошла критическая ошибка в главном цикле реплики", e);
+        } finally {
+            replica.close();
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            LOGGER.info("Реплика остановлена.");
+        }
+    }
+
+
+    /**
+     * @return Журнал медленных запросов или null, если он отключен ({@code lab6.slowlog.thresholdMs} не больше 0)
+     * или файл не удалось открыть.
+     */
+    private static SlowRequestLog createSlowLog() {
+        if (SLOW_LOG_THRESHOLD_MS <= 0) return null;
+        Logger slowLogger = LoggerSetup.setupSlowLog(SLOW_LOG_FILE);
+        if (slowLogger == null) return null;
+        LOGGER.info("Запросы дольше " + SLOW_LOG_THRESHOLD_MS + " мс записываются в " + SLOW_LOG_FILE);
+        return new SlowRequestLog(slowLogger, SLOW_LOG_THRESHOLD_MS);
+    }
+
+    /**
+     * Загружает коллекцию из двоичного снимка. Если снимка еще нет, коллекция импортируется из XML-файла;
+     * если снимок поврежден, сервер также откатывается к XML-файлу.
+     */
+    private TreeSet<Person> loadBinary(BinarySnapshotManager binaryManager, XmlFileManager xmlFileManager) {
+        if (!binaryManager.exists()) {
+            LOGGER.info("Двоичный снимок не найден, коллекция импортируется из XML-файла.");
+            return xmlFileManager.load();
+        }
+        try {
+            return binaryManager.read();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Двоичный снимок " + binaryManager.getFilePath()
+                    + " не может быть прочитан. Коллекция загружается из XML-файла, часть изменений может быть потеряна.", e);
+            return xmlFileManager.load();
+        }
+    }
+
+    /**
+     * Открывает журнал изменений рядом с файлом коллекции и применяет его к загруженной коллекции.
+     * @return Журнал или null, если журнал отключен или не может быть открыт.
+     */
+    private MutationJournal openJournal(XmlFileManager fm, TreeSet<Person> collection) {
+        if (!JOURNAL_ENABLED) {
+            return null;
+        }
+        try {
+            MutationJournal journal = new MutationJournal(Paths.get(fm.getFilePath() + ".journal"), JOURNAL_GROUP_DELAY_MS);
+            journal.replay(collection);
+            return journal;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Не удалось открыть журнал изменений. Сервер работает без журнала.", e);
+            return null;
+        }
+    }
 
-    private void handleConsoleCommand(String command, CollectionManager cm, XmlFileManager fm, NetworkManager nm) {
+    private void handleConsoleCommand(String command, CollectionManager cm, SnapshotService snapshots,
+                                      AutosaveScheduler autosave, XmlFileManager xml, NetworkManager nm) {
         switch (command.toLowerCase().trim()) {
             case "save":
-                LOGGER.info("Выполняется принудительное сохранение коллекции по команде с консоли...");
-                fm.save(cm.getCollection());
-                LOGGER.info("Коллекция успешно сохранена.");
+                if (snapshots.getPendingChanges(cm) == 0) {
+                    LOGGER.info("Коллекция не изменялась с последнего сохранения, сохранение пропущено.");
+                } else if (snapshots.requestSnapshot(cm)) {
+                    autosave.onManualSave();
+                    LOGGER.info("Сохранение коллекции запущено в фоне. Ход выполнения: команда 'status'.");
+                } else {
+                    LOGGER.info("Снимок коллекции уже записывается. " + snapshots.getStatus());
+                }
+                break;
+            case "export":
+                if (snapshots.requestExport(cm, xml)) {
+                    LOGGER.info("Выгрузка коллекции в " + xml.getFilePath() + " запущена в фоне.");
+                } else {
+                    LOGGER.info("Снимок коллекции уже записывается. " + snapshots.getStatus());
+                }
+                break;
+            case "status":
+                LOGGER.info(snapshots.getStatus() + "\n" + autosave.getStatus() + "\n" + idempotencyCache.getStatus()
+                        + (replicationServer != null ? "\n" + replicationServer.getStatus() : ""));
+                break;
+            case "stats":
+                LOGGER.info(metrics.getReport());
                 break;
             case "exit":
                 LOGGER.info("Завершение работы сервера по команде exit...");
@@ -83,11 +327,36 @@ public class Main {
                 }
                 break;
             default:
-                LOGGER.warning("Неизвестная серверная команда: '" + command + "'. Доступные: 'save', 'exit'.");
+                LOGGER.warning("Неизвестная серверная команда: '" + command + "'. Доступные: 'save', 'export', 'status', 'stats', 'exit'.");
+                break;
+        }
+    }
+
+    private void handleReplicaConsoleCommand(String command, ReplicaClient replica, NetworkManager nm) {
+        switch (command.toLowerCase().trim()) {
+            case "status":
+                LOGGER.info(replica.getStatus());
+                break;
+            case "stats":
+                LOGGER.info(metrics.getReport());
+                break;
+            case "exit":
+                LOGGER.info("Завершение работы реплики по команде exit...");
+                running = false;
+                nm.wakeup();
+                break;
+            default:
+                LOGGER.warning("Неизвестная команда реплики: '" + command + "'. Доступные: 'status', 'stats', 'exit'.");
                 break;
         }
     }
 
+    private void startConsoleThread(Pipe.SinkChannel consoleSink) {
+        Thread consoleInputThread = new Thread(() -> readConsoleInput(consoleSink));
+        consoleInputThread.setDaemon(true);
+        consoleInputThread.start();
+    }
+
     private void readConsoleInput(Pipe.SinkChannel consoleSink) {
 
         try (BufferedReader consoleReader = new BufferedReader(new InputStreamReader(System.in))) {
@@ -119,6 +388,16 @@ public class Main {
             System.err.println("Ошибка: порт должен быть целым числом.");
             return;
         }
+        if (REPLICA_OF != null) {
+            InetSocketAddress primary = parseAddress(REPLICA_OF);
+            if (primary == null) {
+                System.err.println("Ошибка: lab6.replica.of должен иметь вид host:port.");
+                return;
+            }
+            new Main(port, null).startReplica(primary);
+            return;
+        }
+
         String filePath = System.getenv("PERSON_COLLECTION_FILE");
         if (filePath == null || filePath.trim().isEmpty()) {
             System.err.println("Ошибка: Переменная окружения PERSON_COLLECTION_FILE не установлена.");
@@ -132,4 +411,14 @@ public class Main {
             LOGGER.log(Level.SEVERE, "Не удалось запустить сервер.", e);
         }
     }
-}
\ No newline at end of file
+
+    private static InetSocketAddress parseAddress(String value) {
+        int colon = value.lastIndexOf(':');
+        if (colon <= 0) return null;
+        try {
+            return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
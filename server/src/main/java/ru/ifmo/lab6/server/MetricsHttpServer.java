@@ -0,0 +1,208 @@
+package ru.ifmo.lab6.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+import ru.ifmo.lab6.server.persistence.MutationJournal;
+import ru.ifmo.lab6.server.persistence.SnapshotService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP-эндпоинт {@code /metrics} с метриками сервера в текстовом формате Prometheus.
+ * <p>
+ * Запросы обслуживает встроенный {@link HttpServer} JDK в отдельном потоке. Метрики цикла событий
+ * ({@link ServerMetrics}, размер коллекции) собираются задачей в потоке цикла событий, только когда
+ * приходит запрос, поэтому без опроса обработка запросов клиентов ничего не теряет.
+ * Память, сборщики мусора и время записи снимков и журнала читаются прямо в потоке HTTP-сервера.
+ */
+public class MetricsHttpServer implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(MetricsHttpServer.class.getName());
+    private static final long COLLECT_TIMEOUT_SEC = 5;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "metrics-http");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Executor loop;
+    private final ServerMetrics metrics;
+    private final CollectionManager collectionManager;
+    private SnapshotService snapshotService;
+    private MutationJournal journal;
+    private long loadMillis = -1;
+
+    /**
+     * @param port Порт HTTP-сервера.
+     * @param bindAddress Адрес, на котором принимаются подключения.
+     * @param loop Исполнитель задач в потоке цикла событий.
+     * @param metrics Метрики обработки запросов.
+     * @param collectionManager Менеджер коллекции.
+     * @throws IOException если порт не удалось открыть.
+     */
+    public MetricsHttpServer(int port, String bindAddress, Executor loop, ServerMetrics metrics,
+                             CollectionManager collectionManager) throws IOException {
+        this.loop = loop;
+        this.metrics = metrics;
+        this.collectionManager = collectionManager;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(bindAddress), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Задает источники метрик сохранения. Вызывается до {@link #start()}.
+     * @param snapshotService Сервис снимков.
+     * @param journal Журнал изменений или null, если журнал отключен.
+     * @param loadMillis Время загрузки коллекции при запуске, мс.
+     */
+    public void setPersistence(SnapshotService snapshotService, MutationJournal journal, long loadMillis) {
+        this.snapshotService = snapshotService;
+        this.journal = journal;
+        this.loadMillis = loadMillis;
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Метрики Prometheus доступны по адресу http:/" + server.getAddress() + "/metrics");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String text;
+            try {
+                text = collect();
+            } catch (TimeoutException e) {
+                LOGGER.warning("Цикл событий не ответил на запрос метрик за " + COLLECT_TIMEOUT_SEC + " с.");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", PrometheusText.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } catch (ExecutionException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ошибка при сборе метрик", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String collect() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<String> loopMetrics = new CompletableFuture<>();
+        loop.execute(() -> {
+            try {
+                StringBuilder sb = new StringBuilder(16 * 1024);
+                metrics.writePrometheus(sb);
+                PrometheusText.header(sb, "lab6_collection_size", "gauge", "Количество элементов коллекции.");
+                PrometheusText.sample(sb, "lab6_collection_size", null, collectionManager.getCollection().size());
+                PrometheusText.header(sb, "lab6_collection_index_ready", "gauge", "1, если индексы коллекции построены.");
+                PrometheusText.sample(sb, "lab6_collection_index_ready", null, collectionManager.isIndexReady() ? 1 : 0);
+                loopMetrics.complete(sb.toString());
+            } catch (RuntimeException e) {
+                loopMetrics.completeExceptionally(e);
+            }
+        });
+        StringBuilder sb = new StringBuilder(loopMetrics.get(COLLECT_TIMEOUT_SEC, TimeUnit.SECONDS));
+        PrometheusText.header(sb, "lab6_collection_modifications_total", "counter", "Изменения коллекции с момента запуска.");
+        PrometheusText.sample(sb, "lab6_collection_modifications_total", null, collectionManager.getModificationCount());
+        writePersistence(sb);
+        writeJvm(sb);
+        return sb.toString();
+    }
+
+    private void writePersistence(StringBuilder sb) {
+        if (loadMillis >= 0) {
+            PrometheusText.header(sb, "lab6_collection_load_seconds", "gauge", "Время загрузки коллекции при запуске.");
+            PrometheusText.sample(sb, "lab6_collection_load_seconds", null, loadMillis / 1e3);
+        }
+        if (snapshotService != null) {
+            PrometheusText.header(sb, "lab6_snapshots_total", "counter", "Записанные снимки и выгрузки коллекции.");
+            PrometheusText.sample(sb, "lab6_snapshots_total", "result=\"success\"", snapshotService.getCompletedSnapshots());
+            PrometheusText.sample(sb, "lab6_snapshots_total", "result=\"failure\"", snapshotService.getFailedSnapshots());
+            PrometheusText.header(sb, "lab6_snapshot_write_seconds_total", "counter", "Суммарное время записи снимков.");
+            PrometheusText.sample(sb, "lab6_snapshot_write_seconds_total", null, snapshotService.getTotalDurationMs() / 1e3);
+            PrometheusText.header(sb, "lab6_snapshot_running", "gauge", "1, если снимок сейчас записывается.");
+            PrometheusText.sample(sb, "lab6_snapshot_running", null, snapshotService.isRunning() ? 1 : 0);
+            if (snapshotService.getLastDurationMs() >= 0) {
+                PrometheusText.header(sb, "lab6_snapshot_last_write_seconds", "gauge", "Время записи последнего снимка.");
+                PrometheusText.sample(sb, "lab6_snapshot_last_write_seconds", null, snapshotService.getLastDurationMs() / 1e3);
+                PrometheusText.header(sb, "lab6_snapshot_last_capture_seconds", "gauge",
+                        "Время фиксации коллекции для последнего снимка в цикле событий.");
+                PrometheusText.sample(sb, "lab6_snapshot_last_capture_seconds", null, snapshotService.getLastCaptureMicros() / 1e6);
+                PrometheusText.header(sb, "lab6_snapshot_last_size", "gauge", "Элементы в последнем снимке.");
+                PrometheusText.sample(sb, "lab6_snapshot_last_size", null, snapshotService.getLastSize());
+            }
+        }
+        if (journal != null) {
+            PrometheusText.header(sb, "lab6_journal_syncs_total", "counter", "Записи групп журнала изменений с fsync.");
+            PrometheusText.sample(sb, "lab6_journal_syncs_total", null, journal.getSyncCount());
+            PrometheusText.header(sb, "lab6_journal_sync_seconds_total", "counter", "Суммарное время записи групп журнала с fsync.");
+            PrometheusText.sample(sb, "lab6_journal_sync_seconds_total", null, journal.getSyncNanos() / 1e9);
+            PrometheusText.header(sb, "lab6_journal_records_since_checkpoint", "gauge", "Записи журнала после последнего снимка.");
+            PrometheusText.sample(sb, "lab6_journal_records_since_checkpoint", null, journal.getRecordsSinceCheckpoint());
+        }
+    }
+
+    private static void writeJvm(StringBuilder sb) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        PrometheusText.header(sb, "lab6_jvm_memory_used_bytes", "gauge", "Используемая память JVM.");
+        PrometheusText.sample(sb, "lab6_jvm_memory_used_bytes", "area=\"heap\"", heap.getUsed());
+        PrometheusText.sample(sb, "lab6_jvm_memory_used_bytes", "area=\"nonheap\"", nonHeap.getUsed());
+        PrometheusText.header(sb, "lab6_jvm_memory_committed_bytes", "gauge", "Выделенная JVM память.");
+        PrometheusText.sample(sb, "lab6_jvm_memory_committed_bytes", "area=\"heap\"", heap.getCommitted());
+        PrometheusText.sample(sb, "lab6_jvm_memory_committed_bytes", "area=\"nonheap\"", nonHeap.getCommitted());
+        PrometheusText.header(sb, "lab6_jvm_memory_max_bytes", "gauge", "Предел кучи (-Xmx).");
+        PrometheusText.sample(sb, "lab6_jvm_memory_max_bytes", "area=\"heap\"", heap.getMax());
+        PrometheusText.header(sb, "lab6_jvm_gc_collections_total", "counter", "Сборки мусора по сборщикам.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            PrometheusText.sample(sb, "lab6_jvm_gc_collections_total",
+                    "gc=\"" + PrometheusText.escape(gc.getName()) + "\"", Math.max(0, gc.getCollectionCount()));
+        }
+        PrometheusText.header(sb, "lab6_jvm_gc_collection_seconds_total", "counter", "Суммарное время сборок мусора по сборщикам.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            PrometheusText.sample(sb, "lab6_jvm_gc_collection_seconds_total",
+                    "gc=\"" + PrometheusText.escape(gc.getName()) + "\"", Math.max(0, gc.getCollectionTime()) / 1e3);
+        }
+        PrometheusText.header(sb, "lab6_jvm_threads", "gauge", "Живые потоки JVM.");
+        PrometheusText.sample(sb, "lab6_jvm_threads", null, ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
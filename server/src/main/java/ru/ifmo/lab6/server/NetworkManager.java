@@ -1,20 +1,33 @@
 package ru.ifmo.lab6.server;
 
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.DatagramFragments;
 import ru.ifmo.lab6.network.Request;
 import ru.ifmo.lab6.network.Response;
+import ru.ifmo.lab6.server.events.RequestReceivedEvent;
+import ru.ifmo.lab6.server.events.ResponseSentEvent;
+import ru.ifmo.lab6.server.persistence.MutationJournal;
 import ru.ifmo.lab6.server.util.SerializationUtil;
+import ru.ifmo.lab6.server.util.ServerConfig;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.Pipe;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -23,17 +36,88 @@ import java.util.logging.Logger;
  * Управляет сетевым взаимодействием и другими событиями ввода-вывода на сервере с использованием NIO.
  * Работает в едином цикле событий (event loop), обрабатывая как сетевые запросы, так и консольные команды.
  * Реализует Closeable для гарантированного закрытия ресурсов.
+ * Если подключен журнал изменений, ответы придерживаются до тех пор, пока все изменения,
+ * сделанные к моменту ответа, не будут записаны на диск (group commit).
+ * Запросы и ответы, не помещающиеся в одну датаграмму, передаются фрагментами ({@link DatagramFragments}).
+ * Если подключена статистика ({@link ServerMetrics}), время каждого этапа обработки запроса измеряется и записывается в нее.
+ * Каждому запросу присваивается идентификатор трассировки ({@link RequestTrace}): он попадает в ответ,
+ * в журнал сервера и в журнал медленных запросов ({@link SlowRequestLog}).
+ * Для записей JDK Flight Recorder порождаются события {@link RequestReceivedEvent} и {@link ResponseSentEvent};
+ * без запущенной записи они не заполняются и не сохраняются.
  */
-public class NetworkManager implements Closeable {
+public class NetworkManager implements Closeable, Executor {
     private static final Logger LOGGER = Logger.getLogger(NetworkManager.class.getName());
     private static final int BUFFER_SIZE = 65536;
+    private static final int RECEIVE_BUDGET = Math.max(1, ServerConfig.getInt("lab6.net.receiveBudget", 64));
+    /** Запас на заголовок ответа на пакет при отборе результатов команд, помещающихся в одно сообщение. */
+    private static final int BATCH_RESPONSE_HEADROOM = 64 * 1024;
+    /** Оценка размера сообщения, которым заменяется не поместившийся результат команды. */
+    private static final int TRIMMED_RESULT_SIZE = 1024;
 
     private final int port;
     private final CommandExecutor commandExecutor;
     private DatagramChannel networkChannel;
+    private SelectionKey networkKey;
     private Selector selector;
     private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // Сетевые буферы прямые: с кучным буфером JDK при каждом receive и send копирует данные через временный прямой.
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ArrayDeque<QueuedReply> outbox = new ArrayDeque<>();
     private Consumer<String> consoleCommandHandler;
+    private MutationJournal journal;
+    private IdempotencyCache idempotencyCache;
+    private ServerMetrics metrics;
+    private final ArrayDeque<DeferredResponse> deferredResponses = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final DatagramFragments.Assembler<SocketAddress> assembler = new DatagramFragments.Assembler<>();
+    private long nextMessageId;
+    private final long traceEpoch = new Random().nextLong();
+    private long traceCounter;
+    private SlowRequestLog slowLog;
+
+    /**
+     * Ответ, ожидающий подтверждения записи журнала.
+     */
+    private static final class DeferredResponse {
+        final Response response;
+        final long sequence;
+        final RequestTrace trace;
+
+        DeferredResponse(Response response, long sequence, RequestTrace trace) {
+            this.response = response;
+            this.sequence = sequence;
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * Сериализованный ответ, ожидающий отправки в конце пробуждения цикла событий.
+     */
+    private static final class QueuedReply {
+        final Response response;
+        final RequestTrace trace;
+        final byte[] data;
+        /** Фрагменты длинного ответа или null, если ответ помещается в одну датаграмму. */
+        final List<ByteBuffer> fragments;
+        final long serializeStart;
+        final long serialized;
+        final ResponseSentEvent sentEvent = new ResponseSentEvent();
+        /** Начало отправки или 0, если отправка еще не начиналась. */
+        long sendStart;
+        /** Номер первого неотправленного фрагмента. */
+        int nextFragment;
+
+        QueuedReply(Response response, RequestTrace trace, byte[] data, List<ByteBuffer> fragments,
+                    long serializeStart, long serialized) {
+            this.response = response;
+            this.trace = trace;
+            this.data = data;
+            this.fragments = fragments;
+            this.serializeStart = serializeStart;
+            this.serialized = serialized;
+        }
+    }
 
     public NetworkManager(int port, CommandExecutor commandExecutor) {
         this.port = port;
@@ -44,6 +128,60 @@ public class NetworkManager implements Closeable {
         return this.selector;
     }
 
+    /**
+     * Подключает журнал изменений: ответы будут отправляться только после fsync соответствующих записей.
+     * @param journal Журнал изменений или null, чтобы отвечать сразу.
+     */
+    public void setJournal(MutationJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Подключает кэш ответов: повторно полученный изменяющий запрос не выполняется снова, клиенту отправляется
+     * сохраненный ответ.
+     * @param idempotencyCache Кэш ответов или null, чтобы выполнять каждый полученный запрос.
+     */
+    public void setIdempotencyCache(IdempotencyCache idempotencyCache) {
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    /**
+     * Подключает статистику обработки запросов.
+     * @param metrics Статистика или null, чтобы не измерять время обработки.
+     */
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Подключает журнал медленных запросов.
+     * @param slowLog Журнал медленных запросов или null, чтобы не отслеживать медленные запросы.
+     */
+    public void setSlowLog(SlowRequestLog slowLog) {
+        this.slowLog = slowLog;
+    }
+
+    /**
+     * Прерывает ожидание в {@link #processEvents()}. Может вызываться из любого потока.
+     */
+    public void wakeup() {
+        Selector current = selector;
+        if (current != null && current.isOpen()) {
+            current.wakeup();
+        }
+    }
+
+    /**
+     * Ставит задачу в очередь цикла событий: она будет выполнена в потоке, обрабатывающем запросы,
+     * поэтому может безопасно обращаться к коллекции. Может вызываться из любого потока.
+     * @param task Задача.
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        wakeup();
+    }
+
     /**
      * Инициализирует Selector и сетевой канал.
      * @throws IOException если произошла ошибка при открытии ресурсов.
@@ -52,8 +190,11 @@ public class NetworkManager implements Closeable {
         selector = Selector.open();
         networkChannel = DatagramChannel.open();
         networkChannel.configureBlocking(false);
+        // Фрагменты длинного сообщения приходят и уходят подряд, буферы сокета должны их вмещать.
+        networkChannel.setOption(StandardSocketOptions.SO_RCVBUF, BUFFER_SIZE * 16);
+        networkChannel.setOption(StandardSocketOptions.SO_SNDBUF, BUFFER_SIZE * 16);
         networkChannel.socket().bind(new InetSocketAddress(port));
-        networkChannel.register(selector, SelectionKey.OP_READ);
+        networkKey = networkChannel.register(selector, SelectionKey.OP_READ);
         LOGGER.info("Сетевой модуль готов. Сервер слушает порт " + port);
     }
 
@@ -73,9 +214,19 @@ public class NetworkManager implements Closeable {
     /**
      * Главный цикл обработки событий. Блокируется до тех пор, пока не появится
      * новое событие (сетевой пакет или консольная команда).
+     * За одно пробуждение из сокета читаются все накопившиеся датаграммы (не больше {@code lab6.net.receiveBudget}),
+     * а ответы на них отправляются одной серией в конце, поэтому при всплеске запросов от многих клиентов
+     * на запрос приходится меньше пробуждений и системных вызовов. Если датаграммы остались непрочитанными,
+     * следующий select() вернется сразу, а задачи и отложенные ответы не будут ждать.
+     * Если буфер отправки сокета заполнен, неотправленные ответы остаются в очереди, и цикл событий
+     * дополнительно ждет готовности канала к записи, продолжая принимать запросы.
      */
     public void processEvents() throws IOException {
-        if (selector.select() > 0) {
+        int ready = selector.select();
+        releaseDurableResponses();
+        int tasksRun = runTasks();
+        int datagrams = 0;
+        if (ready > 0) {
             Set<SelectionKey> selectedKeys = selector.selectedKeys();
             Iterator<SelectionKey> iter = selectedKeys.iterator();
 
@@ -83,7 +234,7 @@ public class NetworkManager implements Closeable {
                 SelectionKey key = iter.next();
                 if (key.isReadable()) {
                     if (key.channel() == networkChannel) {
-                        handleNetworkRead(key);
+                        datagrams = handleNetworkRead();
                     } else if (key.channel() instanceof Pipe.SourceChannel) {
                         handleConsoleRead(key);
                     }
@@ -91,33 +242,123 @@ public class NetworkManager implements Closeable {
                 iter.remove();
             }
         }
+        flushReplies();
+        if (metrics != null) {
+            metrics.onWakeup(deferredResponses.size(), tasksRun, datagrams, assembler.getPending());
+        }
     }
 
-    private void handleNetworkRead(SelectionKey key) {
-        DatagramChannel clientChannel = (DatagramChannel) key.channel();
-        buffer.clear();
+    /**
+     * @return Количество выполненных задач.
+     */
+    private int runTasks() {
+        int count = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            count++;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Ошибка при выполнении задачи цикла событий", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Читает датаграммы, пока сокет не опустеет или не будет исчерпан бюджет, и обрабатывает каждую.
+     * @return Количество прочитанных датаграмм.
+     */
+    private int handleNetworkRead() {
+        int count = 0;
+        while (count < RECEIVE_BUDGET && receiveRequest()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Читает и обрабатывает одну датаграмму; ответ ставится в очередь отправки.
+     * @return false, если в сокете нет данных.
+     */
+    private boolean receiveRequest() {
+        receiveBuffer.clear();
         SocketAddress clientAddress;
+        long receivedAt = System.nanoTime();
+        RequestReceivedEvent receivedEvent = new RequestReceivedEvent();
+        receivedEvent.begin();
         try {
-            clientAddress = clientChannel.receive(buffer);
-            if (clientAddress == null) return;
+            clientAddress = networkChannel.receive(receiveBuffer);
+            if (clientAddress == null) return false;
 
-            buffer.flip();
-            byte[] data = new byte[buffer.remaining()];
-            buffer.get(data);
+            receiveBuffer.flip();
+            byte[] data = new byte[receiveBuffer.remaining()];
+            receiveBuffer.get(data);
 
-            LOGGER.info("Получен запрос от " + clientAddress);
+            boolean fragmented = DatagramFragments.isFragment(data);
+            if (fragmented) {
+                data = assembler.accept(clientAddress, data);
+                if (data == null) return true;
+            }
+
+            RequestTrace trace = new RequestTrace(traceEpoch + ++traceCounter, clientAddress, receivedAt);
+            trace.requestBytes = data.length;
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Получен запрос от " + clientAddress + ", трассировка " + RequestTrace.format(trace.traceId));
+            }
 
             try {
+                long received = System.nanoTime();
+                trace.receiveNanos = received - receivedAt;
                 Request request = (Request) SerializationUtil.deserialize(data);
-                Response response = commandExecutor.execute(request);
-                sendResponse(response, clientAddress);
+                long deserialized = System.nanoTime();
+                trace.deserializeNanos = deserialized - received;
+                CommandType type = request.getCommandType();
+                trace.type = type;
+                trace.requestId = request.getRequestId();
+                if (receivedEvent.shouldCommit()) {
+                    receivedEvent.traceId = trace.traceId;
+                    receivedEvent.client = clientAddress.toString();
+                    receivedEvent.command = type.name();
+                    receivedEvent.requestId = request.getRequestId();
+                    receivedEvent.size = data.length;
+                    receivedEvent.fragmented = fragmented;
+                    receivedEvent.commit();
+                }
+                if (metrics != null) {
+                    metrics.onRequest(type, data.length, trace.receiveNanos, trace.deserializeNanos);
+                }
+                Response cached = idempotencyCache != null ? idempotencyCache.lookup(request) : null;
+                Response response;
+                if (cached != null) {
+                    trace.duplicate = true;
+                    if (metrics != null) metrics.onDuplicate();
+                    LOGGER.info("Повторный запрос №" + request.getRequestId() + " от " + clientAddress
+                            + " уже выполнен (трассировка " + RequestTrace.format(cached.getTraceId())
+                            + "), отправлен сохраненный ответ.");
+                    response = withTrace(cached, trace.traceId);
+                } else {
+                    response = commandExecutor.execute(request, trace.traceId);
+                    trace.executeNanos = System.nanoTime() - deserialized;
+                    if (metrics != null) metrics.onExecute(type, trace.executeNanos);
+                    response.setRequestId(request.getRequestId());
+                    if (idempotencyCache != null) {
+                        idempotencyCache.store(request, response);
+                    }
+                }
+                reply(response, trace);
             } catch (ClassNotFoundException | ClassCastException e) {
-                LOGGER.log(Level.WARNING, "Ошибка десериализации от " + clientAddress, e);
-                sendResponse(new Response(Response.Status.ERROR, "Ошибка: неверный формат запроса."), clientAddress);
+                LOGGER.log(Level.WARNING, "Ошибка десериализации от " + clientAddress + ", трассировка "
+                        + RequestTrace.format(trace.traceId), e);
+                if (metrics != null) metrics.onMalformed(data.length);
+                Response error = new Response(Response.Status.UNSUPPORTED, "Ошибка: неверный формат запроса.");
+                error.setTraceId(trace.traceId);
+                queueResponse(error, trace);
             }
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Ошибка при чтении данных от клиента", e);
         }
+        return true;
     }
 
     private void handleConsoleRead(SelectionKey key) throws IOException {
@@ -133,15 +374,201 @@ public class NetworkManager implements Closeable {
         }
     }
 
-    private void sendResponse(Response response, SocketAddress clientAddress) {
+    /**
+     * Отправляет ответ сразу или откладывает его до подтверждения записи журнала.
+     * Пока есть отложенные ответы, новые ставятся в ту же очередь, чтобы сохранить порядок.
+     */
+    private void reply(Response response, RequestTrace trace) {
+        trace.readyAt = System.nanoTime();
+        if (journal != null) {
+            long sequence = journal.getLastSequence();
+            if (sequence > journal.getDurableSequence() || !deferredResponses.isEmpty()) {
+                deferredResponses.add(new DeferredResponse(response, sequence, trace));
+                return;
+            }
+        }
+        queueResponse(response, trace);
+    }
+
+    private void releaseDurableResponses() {
+        if (deferredResponses.isEmpty()) return;
+        long durable = journal.getDurableSequence();
+        while (!deferredResponses.isEmpty() && deferredResponses.peek().sequence <= durable) {
+            DeferredResponse deferred = deferredResponses.poll();
+            queueResponse(deferred.response, deferred.trace);
+        }
+    }
+
+    /**
+     * Сериализует ответ и ставит его в очередь отправки; очередь отправляется в {@link #flushReplies()}.
+     * @param trace Сведения о запросе, на который отправляется ответ (тип команды null для некорректного запроса).
+     */
+    private void queueResponse(Response response, RequestTrace trace) {
+        if (trace.readyAt == 0) trace.readyAt = System.nanoTime();
         try {
+            long start = System.nanoTime();
             byte[] responseData = SerializationUtil.serialize(response);
-            ByteBuffer responseBuffer = ByteBuffer.wrap(responseData);
-            networkChannel.send(responseBuffer, clientAddress);
-            LOGGER.info("Отправлен ответ клиенту " + clientAddress);
+            List<ByteBuffer> fragments = DatagramFragments.needsSplit(responseData)
+                    ? DatagramFragments.split(responseData, ++nextMessageId) : null;
+            outbox.add(new QueuedReply(response, trace, responseData, fragments, start, System.nanoTime()));
+        } catch (IllegalArgumentException e) {
+            // Команды пакета или скрипта уже выполнены, поэтому теряются только результаты, не поместившиеся в ответ.
+            Response fallback = trimResults(response);
+            if (fallback != null) {
+                LOGGER.warning("Ответ клиенту " + trace.clientAddress + " слишком велик: " + e.getMessage()
+                        + " Результаты части команд заменены сообщением.");
+            } else {
+                LOGGER.warning("Ответ клиенту " + trace.clientAddress + " не отправлен: " + e.getMessage());
+                fallback = new Response(Response.Status.ERROR, "Ответ сервера слишком велик для передачи.");
+            }
+            fallback.setRequestId(response.getRequestId());
+            fallback.setCollectionVersion(response.getCollectionVersion());
+            fallback.setTraceId(trace.traceId);
+            queueResponse(fallback, trace);
         } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Ошибка при отправке ответа клиенту " + clientAddress, e);
+            LOGGER.log(Level.WARNING, "Ошибка при сериализации ответа клиенту " + trace.clientAddress, e);
+        }
+    }
+
+    /**
+     * Копирует сохраненный ответ для отправки на повторный запрос под идентификатором трассировки повтора,
+     * чтобы журнал медленных запросов и клиент видели ту же трассировку, что и журнал сервера. Версия коллекции
+     * остается прежней: она относится к данным ответа, полученным при первом выполнении.
+     */
+    private static Response withTrace(Response cached, long traceId) {
+        Response copy = new Response(cached.getStatus(), cached.getMessage(), cached.getData());
+        copy.setRequestId(cached.getRequestId());
+        copy.setCollectionVersion(cached.getCollectionVersion());
+        copy.setTraceId(traceId);
+        return copy;
+    }
+
+    /**
+     * Уменьшает слишком большой ответ на пакет или скрипт: результаты команд передаются по порядку, пока
+     * помещаются в одно сообщение, а не поместившиеся заменяются сообщением о том, что результат не передан.
+     * @param response Ответ, который не удалось передать.
+     * @return Уменьшенный ответ или null, если это не ответ на пакет или уменьшить его нельзя.
+     */
+    private static Response trimResults(Response response) {
+        if (!(response.getData() instanceof List<?> results)) return null;
+        ArrayList<Response> trimmed = new ArrayList<>(results.size());
+        long budget = DatagramFragments.MAX_MESSAGE_SIZE - BATCH_RESPONSE_HEADROOM;
+        int replaced = 0;
+        for (Object item : results) {
+            if (!(item instanceof Response result)) return null;
+            int size;
+            try {
+                size = SerializationUtil.serialize(result).length;
+            } catch (IOException e) {
+                size = Integer.MAX_VALUE;
+            }
+            if (size <= budget - TRIMMED_RESULT_SIZE) {
+                trimmed.add(result);
+                budget -= size;
+                continue;
+            }
+            Response stub = new Response(Response.Status.ERROR, "Команда выполнена, но ее результат"
+                    + (size != Integer.MAX_VALUE ? " (" + size + " байт)" : "")
+                    + " не помещается в ответ вместе с остальными; выполните ее отдельно.");
+            stub.setRequestId(result.getRequestId());
+            stub.setCollectionVersion(result.getCollectionVersion());
+            stub.setTraceId(result.getTraceId());
+            trimmed.add(stub);
+            budget -= TRIMMED_RESULT_SIZE;
+            replaced++;
+            if (budget < 0) return null;
+        }
+        if (replaced == 0) return null;
+        return new Response(response.getStatus(), response.getMessage() + " Результаты не переданы: " + replaced + ".", trimmed);
+    }
+
+    /**
+     * Отправляет ответы из очереди подряд через один прямой буфер. Если буфер отправки сокета заполнен,
+     * оставшиеся ответы (и неотправленные фрагменты текущего) остаются в очереди до готовности канала к записи:
+     * цикл событий не ждет освобождения буфера и продолжает обслуживать других клиентов.
+     */
+    private void flushReplies() {
+        QueuedReply reply;
+        while ((reply = outbox.peek()) != null) {
+            if (reply.sendStart == 0) {
+                reply.sentEvent.begin();
+                reply.sendStart = System.nanoTime();
+            }
+            try {
+                if (!sendRemaining(reply)) {
+                    networkKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            } catch (IOException e) {
+                outbox.poll();
+                LOGGER.log(Level.WARNING, "Ошибка при отправке ответа клиенту " + reply.trace.clientAddress, e);
+                continue;
+            }
+            outbox.poll();
+            onSent(reply, System.nanoTime());
+        }
+        if (networkKey != null && networkKey.isValid() && networkKey.interestOps() != SelectionKey.OP_READ) {
+            networkKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Отправляет еще не отправленные датаграммы ответа.
+     * @return false, если буфер отправки сокета заполнен и отправка должна быть продолжена позже.
+     */
+    private boolean sendRemaining(QueuedReply reply) throws IOException {
+        SocketAddress clientAddress = reply.trace.clientAddress;
+        if (reply.fragments == null) {
+            return sendDatagram(ByteBuffer.wrap(reply.data), clientAddress);
+        }
+        while (reply.nextFragment < reply.fragments.size()) {
+            if (!sendDatagram(reply.fragments.get(reply.nextFragment), clientAddress)) {
+                return false;
+            }
+            reply.nextFragment++;
+        }
+        return true;
+    }
+
+    private void onSent(QueuedReply reply, long sent) {
+        RequestTrace trace = reply.trace;
+        Response response = reply.response;
+        ResponseSentEvent sentEvent = reply.sentEvent;
+        long sendStart = reply.sendStart;
+        if (metrics != null) {
+            metrics.onResponse(trace.type, response, reply.data.length, reply.serialized - reply.serializeStart,
+                    sent - sendStart, sent - trace.receivedAt);
         }
+        if (slowLog != null) {
+            slowLog.onResponse(trace, response, reply.data.length, reply.serializeStart, reply.serialized, sendStart, sent);
+        }
+        if (sentEvent.shouldCommit()) {
+            sentEvent.traceId = trace.traceId;
+            sentEvent.client = trace.clientAddress.toString();
+            sentEvent.command = trace.type != null ? trace.type.name() : null;
+            sentEvent.status = response.getStatus().name();
+            sentEvent.requestId = response.getRequestId();
+            sentEvent.size = reply.data.length;
+            sentEvent.fragmented = reply.fragments != null;
+            sentEvent.serializeTime = reply.serialized - reply.serializeStart;
+            sentEvent.sinceReceived = sent - trace.receivedAt;
+            sentEvent.commit();
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Отправлен ответ клиенту " + trace.clientAddress);
+        }
+    }
+
+    /**
+     * Отправляет датаграмму через прямой буфер. Сама датаграмма не изменяется, поэтому ее можно отправить
+     * повторно, если буфер отправки сокета был заполнен.
+     * @return false, если буфер отправки сокета заполнен и датаграмма не отправлена.
+     */
+    private boolean sendDatagram(ByteBuffer datagram, SocketAddress clientAddress) throws IOException {
+        sendBuffer.clear();
+        sendBuffer.put(datagram.duplicate());
+        sendBuffer.flip();
+        return networkChannel.send(sendBuffer, clientAddress) != 0;
     }
 
     @Override
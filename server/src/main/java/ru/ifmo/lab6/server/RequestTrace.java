@@ -0,0 +1,47 @@
+package ru.ifmo.lab6.server;
+
+import ru.ifmo.lab6.network.CommandType;
+
+import java.net.SocketAddress;
+
+/**
+ * Сведения об одном запросе, собираемые от приема датаграммы до отправки ответа:
+ * идентификатор трассировки, клиент, размер запроса и время этапов в наносекундах.
+ * Создается в цикле событий на каждый запрос и передается вместе с ответом,
+ * в том числе через очередь ответов, ожидающих записи журнала.
+ */
+final class RequestTrace {
+    final long traceId;
+    final SocketAddress clientAddress;
+    final long receivedAt;
+    CommandType type;
+    long requestId;
+    int requestBytes;
+    boolean duplicate;
+    long receiveNanos;
+    long deserializeNanos;
+    long executeNanos;
+    /**
+     * Момент готовности ответа ({@link System#nanoTime()}); до отправки ответ может ждать записи журнала.
+     */
+    long readyAt;
+
+    /**
+     * @param traceId Идентификатор трассировки.
+     * @param clientAddress Адрес клиента.
+     * @param receivedAt Момент начала приема запроса ({@link System#nanoTime()}).
+     */
+    RequestTrace(long traceId, SocketAddress clientAddress, long receivedAt) {
+        this.traceId = traceId;
+        this.clientAddress = clientAddress;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * @return Идентификатор трассировки в виде 16 шестнадцатеричных цифр, как в журналах сервера.
+     */
+    static String format(long traceId) {
+        String hex = Long.toHexString(traceId);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
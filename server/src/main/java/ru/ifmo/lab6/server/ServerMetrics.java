@@ -0,0 +1,263 @@
+package ru.ifmo.lab6.server;
+
+import ru.ifmo.lab6.network.CommandType;
+import ru.ifmo.lab6.network.Response;
+import ru.ifmo.lab6.util.LatencyHistogram;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Счетчики и гистограммы времени обработки запросов по типам команд.
+ * <p>
+ * Для каждой команды время каждого этапа ({@link Stage}) записывается в отдельную {@link LatencyHistogram}
+ * в наносекундах (значения больше {@link LatencyHistogram#MAX_VALUE}, около 17 с, учитываются как 17 с);
+ * гистограммы создаются при первом запросе команды. Кроме того, считаются байты запросов
+ * и ответов, ответы с ошибкой, некорректные запросы и глубина очередей цикла событий.
+ * Все методы вызываются только в потоке цикла событий, поэтому синхронизация не нужна
+ * (HTTP-экспорт тоже получает метрики задачей в цикле событий).
+ */
+public class ServerMetrics {
+
+    /**
+     * Этапы обработки запроса.
+     */
+    public enum Stage {
+        RECEIVE("прием"),
+        DESERIALIZE("десериализация"),
+        EXECUTE("выполнение"),
+        SERIALIZE("сериализация"),
+        SEND("отправка"),
+        /**
+         * От начала приема до отправки ответа, включая ожидание записи журнала и очереди отправки.
+         */
+        TOTAL("всего");
+
+        private final String title;
+
+        Stage(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    /**
+     * Статистика одной команды.
+     */
+    private static final class CommandStats {
+        private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+        private long requests;
+        private long errors;
+        private long bytesIn;
+        private long bytesOut;
+
+        private CommandStats() {
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final long startedAt = System.nanoTime();
+    private final Map<CommandType, CommandStats> commands = new EnumMap<>(CommandType.class);
+    private long malformed;
+    private long duplicates;
+    private long bytesIn;
+    private long bytesOut;
+    private int deferredResponses;
+    private int maxDeferredResponses;
+    private int maxTasksPerWakeup;
+    private int maxDatagramsPerWakeup;
+    private int pendingFragmentedMessages;
+    private int maxPendingFragmentedMessages;
+
+    private CommandStats statsOf(CommandType type) {
+        CommandStats stats = commands.get(type);
+        if (stats == null) {
+            stats = new CommandStats();
+            commands.put(type, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Учитывает полученный и успешно разобранный запрос.
+     * @param type Тип команды.
+     * @param bytes Размер запроса.
+     * @param receiveNanos Время приема (чтение из сокета и сборка фрагментов).
+     * @param deserializeNanos Время десериализации.
+     */
+    public void onRequest(CommandType type, int bytes, long receiveNanos, long deserializeNanos) {
+        CommandStats stats = statsOf(type);
+        stats.requests++;
+        stats.bytesIn += bytes;
+        bytesIn += bytes;
+        stats.stages[Stage.RECEIVE.ordinal()].record(receiveNanos);
+        stats.stages[Stage.DESERIALIZE.ordinal()].record(deserializeNanos);
+    }
+
+    public void onExecute(CommandType type, long nanos) {
+        statsOf(type).stages[Stage.EXECUTE.ordinal()].record(nanos);
+    }
+
+    /**
+     * Учитывает повторный запрос, на который отправлен сохраненный ответ.
+     */
+    public void onDuplicate() {
+        duplicates++;
+    }
+
+    /**
+     * Учитывает запрос, который не удалось разобрать.
+     * @param bytes Размер запроса.
+     */
+    public void onMalformed(int bytes) {
+        malformed++;
+        bytesIn += bytes;
+    }
+
+    /**
+     * Учитывает отправленный ответ.
+     * @param type Тип команды, на которую отправлен ответ (null для ответа на некорректный запрос).
+     * @param response Ответ.
+     * @param bytes Размер ответа.
+     * @param serializeNanos Время сериализации.
+     * @param sendNanos Время отправки.
+     * @param totalNanos Время от начала приема запроса до отправки ответа.
+     */
+    public void onResponse(CommandType type, Response response, int bytes, long serializeNanos, long sendNanos, long totalNanos) {
+        bytesOut += bytes;
+        if (type == null) return;
+        CommandStats stats = statsOf(type);
+        if (response.isError()) stats.errors++;
+        stats.bytesOut += bytes;
+        stats.stages[Stage.SERIALIZE.ordinal()].record(serializeNanos);
+        stats.stages[Stage.SEND.ordinal()].record(sendNanos);
+        stats.stages[Stage.TOTAL.ordinal()].record(totalNanos);
+    }
+
+    /**
+     * Учитывает глубину очередей после очередного пробуждения цикла событий.
+     * @param deferred Ответы, ожидающие записи журнала.
+     * @param tasks Задачи, выполненные за пробуждение.
+     * @param datagrams Датаграммы, прочитанные за пробуждение.
+     * @param pendingFragmented Незавершенные фрагментированные запросы.
+     */
+    public void onWakeup(int deferred, int tasks, int datagrams, int pendingFragmented) {
+        deferredResponses = deferred;
+        maxDeferredResponses = Math.max(maxDeferredResponses, deferred);
+        maxTasksPerWakeup = Math.max(maxTasksPerWakeup, tasks);
+        maxDatagramsPerWakeup = Math.max(maxDatagramsPerWakeup, datagrams);
+        pendingFragmentedMessages = pendingFragmented;
+        maxPendingFragmentedMessages = Math.max(maxPendingFragmentedMessages, pendingFragmented);
+    }
+
+    /**
+     * @return Отчет для команды stats и консоли сервера: запросы, ошибки, байты и процентили p50/p99
+     * каждого этапа по каждой команде в микросекундах.
+     */
+    public String getReport() {
+        double uptime = (System.nanoTime() - startedAt) / 1e9;
+        long requests = 0;
+        long errors = 0;
+        for (CommandStats stats : commands.values()) {
+            requests += stats.requests;
+            errors += stats.errors;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Статистика за %.0f с: запросов %d (%.1f в секунду), ответов с ошибкой %d, "
+                        + "некорректных запросов %d, повторов из кэша %d%n", uptime, requests, requests / Math.max(uptime, 1e-9),
+                errors, malformed, duplicates));
+        sb.append(String.format(Locale.ROOT, "Получено %d байт, отправлено %d байт%n", bytesIn, bytesOut));
+        sb.append(String.format(Locale.ROOT, "Очереди: ответов ждут записи журнала %d (максимум %d), задач за пробуждение не более %d, "
+                        + "датаграмм за пробуждение не более %d, незавершенных фрагментированных запросов %d (максимум %d)%n",
+                deferredResponses, maxDeferredResponses, maxTasksPerWakeup, maxDatagramsPerWakeup,
+                pendingFragmentedMessages, maxPendingFragmentedMessages));
+        if (commands.isEmpty()) {
+            return sb.append("Запросов еще не было.").toString();
+        }
+        sb.append("Время этапов, мкс (p50/p99):\n");
+        sb.append(String.format(Locale.ROOT, "%-28s %9s %7s %12s %12s", "команда", "запросов", "ошибок", "байт получено", "байт отправл."));
+        for (Stage stage : Stage.values()) {
+            sb.append(String.format(Locale.ROOT, " %15s", stage.getTitle()));
+        }
+        for (Map.Entry<CommandType, CommandStats> entry : commands.entrySet()) {
+            CommandStats stats = entry.getValue();
+            sb.append(String.format(Locale.ROOT, "%n%-28s %9d %7d %12d %12d", entry.getKey().name().toLowerCase(),
+                    stats.requests, stats.errors, stats.bytesIn, stats.bytesOut));
+            for (LatencyHistogram histogram : stats.stages) {
+                sb.append(String.format(Locale.ROOT, " %15s", micros(histogram.getValueAtPercentile(50))
+                        + "/" + micros(histogram.getValueAtPercentile(99))));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Пишет счетчики и квантили этапов в текстовом формате Prometheus для {@link MetricsHttpServer}.
+     * Время этапов экспортируется в секундах как summary с квантилями {@link #QUANTILES}.
+     * @param out Буфер, в который дописываются метрики.
+     */
+    public void writePrometheus(StringBuilder out) {
+        PrometheusText.header(out, "lab6_uptime_seconds", "gauge", "Время работы сервера.");
+        PrometheusText.sample(out, "lab6_uptime_seconds", null, (System.nanoTime() - startedAt) / 1e9);
+        PrometheusText.header(out, "lab6_requests_total", "counter", "Разобранные запросы по командам.");
+        commands.forEach((type, stats) -> PrometheusText.sample(out, "lab6_requests_total", label(type), stats.requests));
+        PrometheusText.header(out, "lab6_request_errors_total", "counter", "Ответы со статусом ERROR по командам.");
+        commands.forEach((type, stats) -> PrometheusText.sample(out, "lab6_request_errors_total", label(type), stats.errors));
+        PrometheusText.header(out, "lab6_request_bytes_total", "counter", "Байты разобранных запросов по командам.");
+        commands.forEach((type, stats) -> PrometheusText.sample(out, "lab6_request_bytes_total", label(type), stats.bytesIn));
+        PrometheusText.header(out, "lab6_response_bytes_total", "counter", "Байты ответов по командам.");
+        commands.forEach((type, stats) -> PrometheusText.sample(out, "lab6_response_bytes_total", label(type), stats.bytesOut));
+        PrometheusText.header(out, "lab6_malformed_requests_total", "counter", "Запросы, которые не удалось разобрать.");
+        PrometheusText.sample(out, "lab6_malformed_requests_total", null, malformed);
+        PrometheusText.header(out, "lab6_duplicate_requests_total", "counter", "Повторные запросы, на которые отправлен ответ из кэша.");
+        PrometheusText.sample(out, "lab6_duplicate_requests_total", null, duplicates);
+        PrometheusText.header(out, "lab6_received_bytes_total", "counter", "Все полученные байты запросов.");
+        PrometheusText.sample(out, "lab6_received_bytes_total", null, bytesIn);
+        PrometheusText.header(out, "lab6_sent_bytes_total", "counter", "Все отправленные байты ответов.");
+        PrometheusText.sample(out, "lab6_sent_bytes_total", null, bytesOut);
+
+        PrometheusText.header(out, "lab6_stage_duration_seconds", "summary", "Время этапов обработки запроса по командам.");
+        for (Map.Entry<CommandType, CommandStats> entry : commands.entrySet()) {
+            String command = label(entry.getKey());
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = entry.getValue().stages[stage.ordinal()];
+                String labels = command + ",stage=\"" + stage.name().toLowerCase() + "\"";
+                for (double quantile : QUANTILES) {
+                    PrometheusText.sample(out, "lab6_stage_duration_seconds",
+                            labels + ",quantile=\"" + quantile + "\"", histogram.getValueAtPercentile(quantile * 100) / 1e9);
+                }
+                PrometheusText.sample(out, "lab6_stage_duration_seconds_sum", labels, histogram.getSum() / 1e9);
+                PrometheusText.sample(out, "lab6_stage_duration_seconds_count", labels, histogram.getCount());
+            }
+        }
+
+        PrometheusText.header(out, "lab6_deferred_responses", "gauge", "Ответы, ожидающие записи журнала изменений.");
+        PrometheusText.sample(out, "lab6_deferred_responses", null, deferredResponses);
+        PrometheusText.header(out, "lab6_deferred_responses_max", "gauge", "Наибольшее число ответов, ожидавших записи журнала.");
+        PrometheusText.sample(out, "lab6_deferred_responses_max", null, maxDeferredResponses);
+        PrometheusText.header(out, "lab6_tasks_per_wakeup_max", "gauge", "Наибольшее число задач за одно пробуждение цикла событий.");
+        PrometheusText.sample(out, "lab6_tasks_per_wakeup_max", null, maxTasksPerWakeup);
+        PrometheusText.header(out, "lab6_datagrams_per_wakeup_max", "gauge", "Наибольшее число датаграмм, прочитанных за одно пробуждение.");
+        PrometheusText.sample(out, "lab6_datagrams_per_wakeup_max", null, maxDatagramsPerWakeup);
+        PrometheusText.header(out, "lab6_pending_fragmented_requests", "gauge", "Незавершенные фрагментированные запросы.");
+        PrometheusText.sample(out, "lab6_pending_fragmented_requests", null, pendingFragmentedMessages);
+        PrometheusText.header(out, "lab6_pending_fragmented_requests_max", "gauge", "Наибольшее число незавершенных фрагментированных запросов.");
+        PrometheusText.sample(out, "lab6_pending_fragmented_requests_max", null, maxPendingFragmentedMessages);
+    }
+
+    private static String label(CommandType type) {
+        return "command=\"" + type.name().toLowerCase() + "\"";
+    }
+
+    private static String micros(long nanos) {
+        return nanos < 10_000 ? String.format(Locale.ROOT, "%.1f", nanos / 1000.0) : Long.toString(nanos / 1000);
+    }
+}
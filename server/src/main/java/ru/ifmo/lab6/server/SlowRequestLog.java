@@ -0,0 +1,58 @@
+package ru.ifmo.lab6.server;
+
+import ru.ifmo.lab6.network.Response;
+
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Журнал медленных запросов: запросы, обработка которых от начала приема до отправки ответа
+ * заняла не меньше порога, записываются отдельной строкой с идентификатором трассировки, адресом клиента,
+ * размерами запроса и ответа и временем каждого этапа.
+ * <p>
+ * Для обычного запроса проверка стоит одного сравнения; строка формируется только для медленных.
+ * Вызывается в потоке цикла событий, поэтому логгеру нужен асинхронный обработчик
+ * (см. {@link ru.ifmo.lab6.server.util.LoggerSetup#setupSlowLog(String)}).
+ */
+public class SlowRequestLog {
+    private final Logger logger;
+    private final long thresholdNanos;
+
+    /**
+     * @param logger Логгер, в который пишутся медленные запросы.
+     * @param thresholdMs Порог, мс.
+     */
+    public SlowRequestLog(Logger logger, long thresholdMs) {
+        this.logger = logger;
+        this.thresholdNanos = thresholdMs * 1_000_000;
+    }
+
+    /**
+     * Учитывает отправленный ответ.
+     * @param trace Сведения о запросе.
+     * @param response Ответ.
+     * @param responseBytes Размер ответа.
+     * @param serializeStart Начало сериализации ответа ({@link System#nanoTime()}).
+     * @param serialized Конец сериализации.
+     * @param sendStart Начало отправки (ответы отправляются серией в конце пробуждения цикла событий).
+     * @param sent Конец отправки.
+     */
+    void onResponse(RequestTrace trace, Response response, int responseBytes, long serializeStart, long serialized,
+                    long sendStart, long sent) {
+        long total = sent - trace.receivedAt;
+        if (total < thresholdNanos) return;
+        logger.info(String.format(Locale.ROOT, "Медленный запрос %s: клиент %s, команда %s (№%d)%s, статус %s, "
+                        + "запрос %d байт, ответ %d байт, всего %.3f мс: прием %.3f, десериализация %.3f, выполнение %.3f, "
+                        + "ожидание журнала %.3f, сериализация %.3f, очередь отправки %.3f, отправка %.3f мс",
+                RequestTrace.format(trace.traceId), trace.clientAddress,
+                trace.type != null ? trace.type.name().toLowerCase() : "неизвестна", trace.requestId,
+                trace.duplicate ? ", повтор из кэша" : "", response.getStatus(), trace.requestBytes, responseBytes,
+                millis(total), millis(trace.receiveNanos), millis(trace.deserializeNanos), millis(trace.executeNanos),
+                millis(serializeStart - trace.readyAt), millis(serialized - serializeStart), millis(sendStart - serialized),
+                millis(sent - sendStart)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
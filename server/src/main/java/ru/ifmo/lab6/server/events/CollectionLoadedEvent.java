@@ -0,0 +1,32 @@
+package ru.ifmo.lab6.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: коллекция загружена из файла при запуске сервера.
+ */
+@Name("ru.ifmo.lab6.CollectionLoaded")
+@Label("Коллекция загружена")
+@Description("Загрузка коллекции из файла")
+@Category({"Lab6", "Сохранение"})
+@StackTrace(false)
+public class CollectionLoadedEvent extends Event {
+    @Label("Файл")
+    public String path;
+
+    @Label("Формат")
+    public String format;
+
+    @Label("Элементов")
+    public long persons;
+
+    @Label("Размер файла")
+    @DataAmount(DataAmount.BYTES)
+    public long size;
+}
@@ -0,0 +1,33 @@
+package ru.ifmo.lab6.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: команда выполнена над коллекцией. Длительность — работа {@code CommandExecutor}
+ * без сетевых этапов.
+ */
+@Name("ru.ifmo.lab6.CommandExecuted")
+@Label("Команда выполнена")
+@Description("Выполнение команды над коллекцией")
+@Category({"Lab6", "Команды"})
+@StackTrace(false)
+public class CommandExecutedEvent extends Event {
+    @Label("Трассировка")
+    @Description("Идентификатор трассировки запроса, как в журналах сервера")
+    public long traceId;
+
+    @Label("Команда")
+    public String command;
+
+    @Label("Статус ответа")
+    public String status;
+
+    @Label("Размер результата")
+    @Description("Количество элементов в ответе (0, если ответ содержит только сообщение)")
+    public int resultSize;
+}
@@ -0,0 +1,40 @@
+package ru.ifmo.lab6.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: получен и разобран запрос клиента. Длительность — прием датаграммы
+ * (со сборкой фрагментов) и десериализация.
+ */
+@Name("ru.ifmo.lab6.RequestReceived")
+@Label("Запрос получен")
+@Description("Прием и десериализация запроса клиента")
+@Category({"Lab6", "Сеть"})
+@StackTrace(false)
+public class RequestReceivedEvent extends Event {
+    @Label("Трассировка")
+    @Description("Идентификатор трассировки запроса, как в журналах сервера")
+    public long traceId;
+
+    @Label("Клиент")
+    public String client;
+
+    @Label("Команда")
+    public String command;
+
+    @Label("Номер запроса")
+    public long requestId;
+
+    @Label("Размер")
+    @DataAmount(DataAmount.BYTES)
+    public int size;
+
+    @Label("Фрагментирован")
+    public boolean fragmented;
+}
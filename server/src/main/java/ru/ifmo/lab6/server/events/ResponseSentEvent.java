@@ -0,0 +1,53 @@
+package ru.ifmo.lab6.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Событие JFR: ответ отправлен клиенту. Длительность — отправка ответа; сериализация выполняется
+ * раньше, при постановке ответа в очередь отправки, и ее время записывается отдельным полем.
+ */
+@Name("ru.ifmo.lab6.ResponseSent")
+@Label("Ответ отправлен")
+@Description("Отправка ответа клиенту")
+@Category({"Lab6", "Сеть"})
+@StackTrace(false)
+public class ResponseSentEvent extends Event {
+    @Label("Трассировка")
+    @Description("Идентификатор трассировки запроса, как в журналах сервера")
+    public long traceId;
+
+    @Label("Клиент")
+    public String client;
+
+    @Label("Команда")
+    public String command;
+
+    @Label("Статус ответа")
+    public String status;
+
+    @Label("Номер запроса")
+    public long requestId;
+
+    @Label("Размер")
+    @DataAmount(DataAmount.BYTES)
+    public int size;
+
+    @Label("Фрагментирован")
+    public boolean fragmented;
+
+    @Label("Время сериализации")
+    @Timespan(Timespan.NANOSECONDS)
+    public long serializeTime;
+
+    @Label("Время с начала приема")
+    @Description("От начала приема запроса до отправки ответа, включая ожидание записи журнала")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sinceReceived;
+}
@@ -0,0 +1,35 @@
+package ru.ifmo.lab6.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: снимок коллекции записан в файл. Длительность — запись, fsync и переименование.
+ */
+@Name("ru.ifmo.lab6.SnapshotWritten")
+@Label("Снимок записан")
+@Description("Запись снимка коллекции в файл")
+@Category({"Lab6", "Сохранение"})
+@StackTrace(false)
+public class SnapshotWrittenEvent extends Event {
+    @Label("Файл")
+    public String path;
+
+    @Label("Формат")
+    public String format;
+
+    @Label("Элементов")
+    public long persons;
+
+    @Label("Размер файла")
+    @DataAmount(DataAmount.BYTES)
+    public long size;
+
+    @Label("Успешно")
+    public boolean succeeded;
+}
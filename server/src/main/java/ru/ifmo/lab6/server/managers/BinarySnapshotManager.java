@@ -0,0 +1,436 @@
+package ru.ifmo.lab6.server.managers;
+
+import ru.ifmo.lab6.model.Color;
+import ru.ifmo.lab6.model.Coordinates;
+import ru.ifmo.lab6.model.Country;
+import ru.ifmo.lab6.model.Location;
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.events.CollectionLoadedEvent;
+import ru.ifmo.lab6.server.events.SnapshotWrittenEvent;
+import ru.ifmo.lab6.server.persistence.PersonCodec;
+import ru.ifmo.lab6.server.persistence.PersonSets;
+import ru.ifmo.lab6.server.persistence.SnapshotCompression;
+import ru.ifmo.lab6.server.persistence.SnapshotStore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Управляет снимками коллекции в компактном двоичном формате.
+ * <p>
+ * Файл состоит из трех частей:
+ * <ul>
+ *     <li>заголовок фиксированного размера: сигнатура, версия, количество записей,
+ *     смещения и длины разделов, контрольные суммы CRC32 разделов;</li>
+ *     <li>раздел записей фиксированной длины ({@value #RECORD_SIZE} байт на элемент);</li>
+ *     <li>таблица строк: байты UTF-8, на которые записи ссылаются смещением и длиной.</li>
+ * </ul>
+ * При загрузке файл отображается в память, сигнатура, версия и размеры проверяются до чтения данных,
+ * затем проверяются контрольные суммы, и коллекция восстанавливается за один последовательный проход.
+ * Поврежденный файл отвергается целиком.
+ * <p>
+ * Если включено сжатие ({@link SnapshotCompression}), отображение в память невозможно, поэтому снимок
+ * пишется потоком: сигнатура, количество элементов и записи {@link PersonCodec} внутри gzip,
+ * целостность которого проверяется контрольной суммой самого gzip. Формат при загрузке
+ * определяется по сигнатуре файла.
+ */
+public class BinarySnapshotManager implements SnapshotStore {
+    private static final Logger LOGGER = Logger.getLogger(BinarySnapshotManager.class.getName());
+
+    private static final int MAGIC = 0x4C36534E; // "L6SN"
+    private static final int STREAM_MAGIC = 0x4C36535A; // "L6SZ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 88;
+    private static final int NULL_LENGTH = -1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String filePath;
+
+    public BinarySnapshotManager(String filePath) {
+        this.filePath = filePath.replace("\"", "");
+    }
+
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public boolean exists() {
+        File file = new File(filePath);
+        return file.exists() && file.length() > 0;
+    }
+
+    @Override
+    public TreeSet<Person> load() {
+        if (!exists()) {
+            LOGGER.info("Двоичный снимок не найден по пути: " + filePath + ". Будет создана новая коллекция.");
+            return new TreeSet<>();
+        }
+        try {
+            return read();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Двоичный снимок поврежден или не может быть прочитан. Будет использована пустая коллекция.", e);
+            return new TreeSet<>();
+        }
+    }
+
+    /**
+     * Читает снимок: обычный — отображая его в память, сжатый — потоком.
+     * @return Загруженная коллекция.
+     * @throws IOException если файл поврежден или не может быть прочитан.
+     */
+    public TreeSet<Person> read() throws IOException {
+        CollectionLoadedEvent event = new CollectionLoadedEvent();
+        event.begin();
+        TreeSet<Person> collection = SnapshotCompression.isCompressed(Paths.get(filePath)) ? readCompressed() : readMapped();
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.format = "binary";
+            event.persons = collection.size();
+            event.size = new File(filePath).length();
+            event.commit();
+        }
+        return collection;
+    }
+
+    private TreeSet<Person> readCompressed() throws IOException {
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(SnapshotCompression.decompressIfNeeded(new FileInputStream(filePath)))) {
+            if (in.readInt() != STREAM_MAGIC) {
+                throw new IOException("Файл " + filePath + " не является сжатым снимком коллекции.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия сжатого снимка: " + version);
+            }
+            long count = in.readLong();
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                throw new IOException("Некорректное количество элементов в снимке: " + count);
+            }
+            List<Person> persons = new ArrayList<>((int) Math.min(count, 1 << 20));
+            for (long i = 0; i < count; i++) {
+                persons.add(PersonCodec.read(in));
+            }
+            if (in.readInt() != STREAM_MAGIC || in.read() != -1) {
+                throw new IOException("Сжатый снимок содержит лишние данные после последней записи.");
+            }
+            TreeSet<Person> collection = PersonSets.fromOrderedParts(List.of(persons));
+            LOGGER.info("Коллекция загружена из сжатого двоичного снимка за " + (System.nanoTime() - start) / 1_000_000
+                    + " мс. Элементов: " + collection.size());
+            return collection;
+        } catch (EOFException e) {
+            throw new IOException("Сжатый снимок обрезан.", e);
+        }
+    }
+
+    private TreeSet<Person> readMapped() throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Файл снимка слишком короткий: " + fileSize + " байт.");
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Файл " + filePath + " не является двоичным снимком коллекции.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия двоичного снимка: " + version);
+            }
+            long count = header.getLong();
+            int recordSize = header.getInt();
+            long recordsOffset = header.getLong();
+            long stringsOffset = header.getLong();
+            long stringsLength = header.getLong();
+            long recordsCrc = header.getLong();
+            long stringsCrc = header.getLong();
+            if (recordSize != RECORD_SIZE || count < 0 || recordsOffset != HEADER_SIZE
+                    || stringsOffset != recordsOffset + count * RECORD_SIZE
+                    || stringsOffset + stringsLength != fileSize) {
+                throw new IOException("Заголовок двоичного снимка не соответствует размеру файла.");
+            }
+            if (count * RECORD_SIZE > Integer.MAX_VALUE || stringsLength > Integer.MAX_VALUE) {
+                throw new IOException("Раздел двоичного снимка превышает 2 ГБ.");
+            }
+
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset, count * RECORD_SIZE);
+            MappedByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, stringsOffset, stringsLength);
+            if (crc(records) != recordsCrc || crc(strings) != stringsCrc) {
+                throw new IOException("Контрольная сумма двоичного снимка не совпадает.");
+            }
+
+            List<Person> persons = new ArrayList<>((int) count);
+            byte[] scratch = new byte[256];
+            for (long i = 0; i < count; i++) {
+                persons.add(readRecord(records, strings, scratch));
+            }
+            TreeSet<Person> collection = PersonSets.fromOrderedParts(List.of(persons));
+            LOGGER.info("Коллекция загружена из двоичного снимка за " + (System.nanoTime() - start) / 1_000_000
+                    + " мс. Элементов: " + collection.size());
+            return collection;
+        }
+    }
+
+    private static long crc(ByteBuffer section) {
+        CRC32 crc = new CRC32();
+        crc.update(section.duplicate());
+        return crc.getValue();
+    }
+
+    private static Person readRecord(ByteBuffer records, ByteBuffer strings, byte[] scratch) {
+        Person person = new Person();
+        person.setId(records.getLong());
+        long nameOffset = records.getLong();
+        int nameLength = records.getInt();
+        double coordX = records.getDouble();
+        float coordY = records.getFloat();
+        long epochSecond = records.getLong();
+        int nano = records.getInt();
+        long height = records.getLong();
+        int eyeColor = records.get();
+        int hairColor = records.get();
+        int nationality = records.get();
+        records.get(); // выравнивание
+        float locX = records.getFloat();
+        double locY = records.getDouble();
+        double locZ = records.getDouble();
+        long locNameOffset = records.getLong();
+        int locNameLength = records.getInt();
+
+        person.setName(readString(strings, nameOffset, nameLength, scratch));
+        person.setCoordinates(new Coordinates(coordX, coordY));
+        person.setCreationDate(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+        person.setHeight(height);
+        if (eyeColor > 0) person.setEyeColor(Color.values()[eyeColor - 1]);
+        if (hairColor > 0) person.setHairColor(Color.values()[hairColor - 1]);
+        if (nationality > 0) person.setNationality(Country.values()[nationality - 1]);
+        person.setLocation(new Location(locX, locY, locZ, readString(strings, locNameOffset, locNameLength, scratch)));
+        return person;
+    }
+
+    private static String readString(ByteBuffer strings, long offset, int length, byte[] scratch) {
+        if (length == NULL_LENGTH) return null;
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        strings.get((int) offset, bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean save(Collection<Person> collection, LongConsumer progress) {
+        SnapshotWrittenEvent event = new SnapshotWrittenEvent();
+        event.begin();
+        boolean saved = writeFile(collection, progress);
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.format = "binary";
+            event.persons = collection.size();
+            event.size = new File(filePath).length();
+            event.succeeded = saved;
+            event.commit();
+        }
+        return saved;
+    }
+
+    private boolean writeFile(Collection<Person> collection, LongConsumer progress) {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Path stringsTemp = target.resolveSibling(target.getFileName() + ".strings.tmp");
+        try {
+            if (SnapshotCompression.isEnabled()) {
+                writeCompressed(collection, temp, progress);
+            } else {
+                write(collection, temp, stringsTemp, progress);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Произошла ошибка при сохранении двоичного снимка!", e);
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(stringsTemp);
+            } catch (IOException e) {
+                LOGGER.fine("Не удалось удалить временный файл " + stringsTemp);
+            }
+        }
+        try {
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Не удалось заменить двоичный снимок сохраненной копией " + temp, e);
+            return false;
+        }
+    }
+
+    /**
+     * Пишет записи в основной файл, а строки — во вспомогательный, затем дописывает таблицу строк
+     * в конец и заполняет заголовок. Обе части пишутся потоково, без накопления в памяти.
+     */
+    private static void write(Collection<Person> collection, Path temp, Path stringsTemp, LongConsumer progress) throws IOException {
+        CRC32 recordsCrc = new CRC32();
+        CRC32 stringsCrc = new CRC32();
+        long count = 0;
+        long stringsLength;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ)) {
+            try (StringTableWriter stringTable = new StringTableWriter(stringsTemp, stringsCrc)) {
+                out.position(HEADER_SIZE);
+                ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                ByteBuffer block = ByteBuffer.allocate(RECORD_SIZE * (BUFFER_SIZE / RECORD_SIZE));
+                for (Person person : collection) {
+                    record.clear();
+                    writeRecord(record, person, stringTable);
+                    record.flip();
+                    recordsCrc.update(record.array(), 0, RECORD_SIZE);
+                    block.put(record);
+                    if (!block.hasRemaining()) {
+                        writeFully(out, block);
+                    }
+                    progress.accept(++count);
+                }
+                writeFully(out, block);
+                stringTable.flush();
+                stringsLength = stringTable.length();
+            }
+            try (FileChannel strings = FileChannel.open(stringsTemp, StandardOpenOption.READ)) {
+                long position = 0;
+                while (position < stringsLength) {
+                    position += strings.transferTo(position, stringsLength - position, out);
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putLong(count).putInt(RECORD_SIZE)
+                    .putLong(HEADER_SIZE)
+                    .putLong(HEADER_SIZE + count * RECORD_SIZE)
+                    .putLong(stringsLength)
+                    .putLong(recordsCrc.getValue())
+                    .putLong(stringsCrc.getValue());
+            header.position(HEADER_SIZE).flip();
+            out.write(header, 0);
+            out.force(true);
+        }
+    }
+
+    private static void writeCompressed(Collection<Person> collection, Path temp, LongConsumer progress) throws IOException {
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             OutputStream compressed = SnapshotCompression.compress(fileOut);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(compressed, BUFFER_SIZE))) {
+            out.writeInt(STREAM_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(collection.size());
+            long count = 0;
+            for (Person person : collection) {
+                PersonCodec.write(out, person);
+                progress.accept(++count);
+            }
+            out.writeInt(STREAM_MAGIC);
+            out.flush();
+            SnapshotCompression.finish(compressed);
+            fileOut.getFD().sync();
+        }
+    }
+
+    private static void writeRecord(ByteBuffer record, Person person, StringTableWriter strings) throws IOException {
+        record.putLong(person.getId());
+        strings.put(record, person.getName());
+        record.putDouble(person.getCoordinates().getX());
+        record.putFloat(person.getCoordinates().getY());
+        record.putLong(person.getCreationDate().toEpochSecond(ZoneOffset.UTC));
+        record.putInt(person.getCreationDate().getNano());
+        record.putLong(person.getHeight());
+        record.put((byte) (person.getEyeColor() == null ? 0 : person.getEyeColor().ordinal() + 1));
+        record.put((byte) (person.getHairColor() == null ? 0 : person.getHairColor().ordinal() + 1));
+        record.put((byte) (person.getNationality() == null ? 0 : person.getNationality().ordinal() + 1));
+        record.put((byte) 0); // выравнивание
+        Location location = person.getLocation();
+        record.putFloat(location.getX());
+        record.putDouble(location.getY());
+        record.putDouble(location.getZ());
+        strings.put(record, location.getName());
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Потоковая запись таблицы строк во вспомогательный файл.
+     */
+    private static final class StringTableWriter implements AutoCloseable {
+        private final DataOutputStream out;
+        private final CRC32 crc;
+        private long length;
+
+        StringTableWriter(Path path, CRC32 crc) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile()), BUFFER_SIZE));
+            this.crc = crc;
+        }
+
+        /**
+         * Дописывает строку в таблицу и кладет в запись ее смещение и длину.
+         */
+        void put(ByteBuffer record, String value) throws IOException {
+            if (value == null) {
+                record.putLong(0).putInt(NULL_LENGTH);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            record.putLong(length).putInt(bytes.length);
+            out.write(bytes);
+            crc.update(bytes);
+            length += bytes.length;
+        }
+
+        long length() {
+            return length;
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.ifmo.lab6.server.managers;
+
+import ru.ifmo.lab6.model.Color;
+import ru.ifmo.lab6.model.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Вторичные структуры коллекции: количество элементов по цвету волос и сумма роста.
+ * Позволяют отвечать на count_by_hair_color, filter_less_than_hair_color и average_of_height
+ * без полного перебора.
+ * <p>
+ * Индекс строится фоновым потоком по снимку коллекции, поэтому сервер начинает принимать запросы
+ * сразу после загрузки данных. Пока индекс строится, изменения коллекции накапливаются в очереди,
+ * а запросы выполняются перебором; когда построение завершено, очередь применяется в потоке цикла событий
+ * и индекс объявляется готовым. Все методы, кроме {@link #isReady()}, вызываются только в потоке цикла событий.
+ */
+public class CollectionIndex {
+    private static final Logger LOGGER = Logger.getLogger(CollectionIndex.class.getName());
+
+    private final long[] hairColorCounts = new long[Color.values().length];
+    private long withoutHairColor;
+    private long heightSum;
+    private volatile boolean ready;
+    private List<Person[]> pending;
+
+    /**
+     * Запускает построение индекса по снимку коллекции.
+     * @param snapshot Снимок коллекции, зафиксированный в потоке цикла событий.
+     * @param loop Исполнитель задач в потоке цикла событий.
+     */
+    void buildAsync(List<Person> snapshot, Executor loop) {
+        pending = new ArrayList<>();
+        Thread builder = new Thread(() -> {
+            long start = System.nanoTime();
+            for (Person person : snapshot) {
+                include(person);
+            }
+            loop.execute(() -> {
+                for (Person[] change : pending) {
+                    apply(change[0], change[1]);
+                }
+                LOGGER.info("Вторичные индексы построены за " + (System.nanoTime() - start) / 1_000_000
+                        + " мс (элементов " + snapshot.size() + ", изменений во время построения " + pending.size() + ").");
+                pending = null;
+                ready = true;
+            });
+        }, "index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Учитывает изменение коллекции.
+     * @param removed Удаленный или замененный элемент (null, если его не было).
+     * @param added Добавленный элемент (null, если элемент только удален).
+     */
+    void onChange(Person removed, Person added) {
+        if (ready) {
+            apply(removed, added);
+        } else if (pending != null) {
+            pending.add(new Person[]{removed, added});
+        }
+    }
+
+    void onClear() {
+        if (ready) {
+            reset();
+        } else if (pending != null) {
+            pending.clear();
+            pending.add(new Person[]{null, null});
+        }
+    }
+
+    private void apply(Person removed, Person added) {
+        if (removed == null && added == null) {
+            reset();
+            return;
+        }
+        if (removed != null) exclude(removed);
+        if (added != null) include(added);
+    }
+
+    private void include(Person person) {
+        heightSum += person.getHeight();
+        if (person.getHairColor() == null) {
+            withoutHairColor++;
+        } else {
+            hairColorCounts[person.getHairColor().ordinal()]++;
+        }
+    }
+
+    private void exclude(Person person) {
+        heightSum -= person.getHeight();
+        if (person.getHairColor() == null) {
+            withoutHairColor--;
+        } else {
+            hairColorCounts[person.getHairColor().ordinal()]--;
+        }
+    }
+
+    private void reset() {
+        Arrays.fill(hairColorCounts, 0);
+        withoutHairColor = 0;
+        heightSum = 0;
+    }
+
+    long countByHairColor(Color hairColor) {
+        return hairColor == null ? withoutHairColor : hairColorCounts[hairColor.ordinal()];
+    }
+
+    long countLessThanHairColor(Color hairColor) {
+        long count = 0;
+        for (int i = 0; i < hairColor.ordinal(); i++) {
+            count += hairColorCounts[i];
+        }
+        return count;
+    }
+
+    long getHeightSum() {
+        return heightSum;
+    }
+}
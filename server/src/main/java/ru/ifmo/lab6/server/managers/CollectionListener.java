@@ -0,0 +1,29 @@
+package ru.ifmo.lab6.server.managers;
+
+import ru.ifmo.lab6.model.Person;
+
+/**
+ * Получатель уведомлений об изменениях коллекции.
+ * Уведомления описывают физический результат команды (элемент записан, удален, коллекция очищена),
+ * поэтому их повторное применение к той же коллекции дает тот же результат.
+ * Методы вызываются в потоке, изменяющем коллекцию, сразу после изменения.
+ */
+public interface CollectionListener {
+
+    /**
+     * Элемент добавлен или заменен элементом с тем же id.
+     * @param person Новое состояние элемента.
+     */
+    void onPut(Person person);
+
+    /**
+     * Элемент удален.
+     * @param id Идентификатор удаленного элемента.
+     */
+    void onRemove(long id);
+
+    /**
+     * Коллекция очищена.
+     */
+    void onClear();
+}
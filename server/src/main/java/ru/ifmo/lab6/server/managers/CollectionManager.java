@@ -5,20 +5,34 @@ import ru.ifmo.lab6.model.Person;
 
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * Управляет коллекцией объектов Person.
- * Все операции по обработке коллекции реализованы с использованием Stream API.
+ * Коллекция упорядочена по id, поэтому поиск по id выполняется через само дерево.
+ * Агрегаты по цвету волос и росту берутся из {@link CollectionIndex}, когда он построен,
+ * а до этого вычисляются перебором с использованием Stream API.
  * Методы не синхронизированы, так как сервер работает в однопоточном режиме.
+ * Каждое изменение сообщается зарегистрированным {@link CollectionListener} (например, журналу).
  */
 public class CollectionManager {
     private TreeSet<Person> collection;
     private final ZonedDateTime initializationTime;
     private long nextId = 1;
+    private volatile long modificationCount;
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private final List<CollectionListener> listeners = new CopyOnWriteArrayList<>();
+    private CollectionIndex index = new CollectionIndex();
 
     public CollectionManager(TreeSet<Person> initialCollection) {
         this.initializationTime = ZonedDateTime.now();
@@ -27,81 +41,292 @@ public class CollectionManager {
     }
 
     private void updateNextId() {
-        nextId = collection.stream()
-                .mapToLong(Person::getId)
-                .max()
-                .orElse(0L) + 1;
+        nextId = collection.isEmpty() ? 1 : collection.last().getId() + 1;
+    }
+
+    /**
+     * Запускает фоновое построение вторичных индексов. До его завершения запросы выполняются перебором.
+     * Вызывается в потоке цикла событий.
+     * @param loop Исполнитель задач в потоке цикла событий.
+     */
+    public void buildIndexesAsync(Executor loop) {
+        index.buildAsync(snapshot(), loop);
+    }
+
+    /**
+     * Заменяет всю коллекцию (например, снимком с основного сервера при повторном подключении реплики)
+     * и перестраивает вторичные индексы. Слушатели получают очистку и добавление каждого нового элемента.
+     * Вызывается в потоке цикла событий.
+     * @param newCollection Новая коллекция.
+     * @param loop Исполнитель задач в потоке цикла событий.
+     */
+    public void replaceCollection(TreeSet<Person> newCollection, Executor loop) {
+        collection = newCollection;
+        updateNextId();
+        index = new CollectionIndex();
+        fireClear();
+        for (Person person : collection) firePut(person);
+        buildIndexesAsync(loop);
+    }
+
+    public boolean isIndexReady() {
+        return index.isReady();
+    }
+
+    private Person findById(long id) {
+        if (id <= 0) return null;
+        Person found = collection.ceiling(keyOf(id));
+        return found != null && found.getId() == id ? found : null;
+    }
+
+    /**
+     * Элементы сравниваются по id, поэтому для поиска в дереве достаточно "пустого" элемента с нужным id.
+     */
+    private static Person keyOf(long id) {
+        Person key = new Person();
+        key.setId(id);
+        return key;
+    }
+
+    public void addListener(CollectionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CollectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Каждое добавление, замена и удаление элемента увеличивает счетчик на единицу.
+     * Счетчик можно читать из любого потока, например планировщиком автосохранения.
+     * @return Количество изменений коллекции с момента запуска сервера.
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Версия коллекции для проверки актуальности кэша клиента. Меняется при каждом изменении коллекции;
+     * случайная начальная точка делает версии разных запусков сервера несовпадающими.
+     * @return Версия коллекции (не 0).
+     */
+    public long getVersion() {
+        long version = epoch + modificationCount * 0x9E3779B97F4A7C15L;
+        return version != 0 ? version : 1;
+    }
+
+    private void firePut(Person person) {
+        modificationCount++;
+        for (CollectionListener listener : listeners) listener.onPut(person);
+    }
+
+    private void fireRemove(long id) {
+        modificationCount++;
+        for (CollectionListener listener : listeners) listener.onRemove(id);
+    }
+
+    private void fireClear() {
+        modificationCount++;
+        for (CollectionListener listener : listeners) listener.onClear();
     }
 
     public TreeSet<Person> getCollection() {
         return collection;
     }
 
+    /**
+     * Возвращает согласованное состояние коллекции на текущий момент.
+     * Копируются только ссылки: элементы после добавления в коллекцию не изменяются
+     * (update заменяет элемент новым объектом), поэтому снимок можно читать из другого потока,
+     * пока коллекция продолжает изменяться.
+     * @return Неизменяемый по составу список элементов в порядке возрастания id.
+     */
+    public List<Person> snapshot() {
+        return Arrays.asList(collection.toArray(new Person[0]));
+    }
+
+    /**
+     * Возвращает часть коллекции для постраничного вывода. Начало страницы находится поиском по дереву,
+     * поэтому стоимость страницы не зависит от ее положения в коллекции.
+     * @param afterId id последнего элемента предыдущей страницы или 0 для первой страницы.
+     * @param limit Максимальное количество элементов.
+     * @return Элементы страницы.
+     */
+    public ArrayList<Person> getPage(long afterId, int limit) {
+        if (limit <= 0) return new ArrayList<>();
+        Iterable<Person> source = afterId > 0 ? collection.tailSet(keyOf(afterId), false) : collection;
+        ArrayList<Person> page = new ArrayList<>(Math.min(limit, collection.size()));
+        Iterator<Person> iterator = source.iterator();
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+
+    /**
+     * Ключи страниц для вывода всей коллекции страницами по limit элементов: afterId каждой страницы,
+     * кроме первой. По ним следующие страницы можно запросить сразу. Коллекция проходится один раз.
+     * @param limit Размер страницы.
+     * @return id последних элементов всех страниц, кроме последней.
+     */
+    public long[] getPageKeys(int limit) {
+        if (limit <= 0 || collection.size() <= limit) return new long[0];
+        long[] keys = new long[(collection.size() - 1) / limit];
+        int position = 0;
+        int count = 0;
+        for (Person person : collection) {
+            if (++position % limit == 0) {
+                keys[count++] = person.getId();
+                if (count == keys.length) break;
+            }
+        }
+        return keys;
+    }
+
     public String getInfo() {
         return "Тип коллекции: " + collection.getClass().getName() +
                 "\nДата инициализации: " + initializationTime.format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss z")) +
-                "\nКоличество элементов: " + collection.size();
+                "\nКоличество элементов: " + collection.size() +
+                (index.isReady() ? "" : "\nВторичные индексы строятся, запросы выполняются перебором.");
+    }
+
+    /**
+     * Проверяет элемент, полученный от клиента, до изменения коллекции. Десериализация не вызывает
+     * сеттеры с проверками, поэтому обязательные поля могут оказаться null; такой элемент нельзя ни
+     * хранить, ни записать в журнал изменений.
+     * @param person Элемент.
+     * @throws IllegalArgumentException если обязательное поле не задано или значение вне допустимых границ.
+     */
+    private static void requireValid(Person person) {
+        if (person == null) {
+            throw new IllegalArgumentException("Элемент не задан.");
+        }
+        if (person.getName() == null || person.getName().trim().isEmpty()) {
+            throw new IllegalArgumentException("Имя не может быть null или пустым.");
+        }
+        if (person.getCoordinates() == null || person.getCoordinates().getX() == null) {
+            throw new IllegalArgumentException("Координаты не могут быть null.");
+        }
+        if (person.getCoordinates().getX() > 348) {
+            throw new IllegalArgumentException("Максимальное значение координаты X: 348.");
+        }
+        if (person.getHeight() <= 0) {
+            throw new IllegalArgumentException("Рост должен быть больше 0.");
+        }
+        if (person.getLocation() == null || person.getLocation().getX() == null || person.getLocation().getZ() == null) {
+            throw new IllegalArgumentException("Местоположение и его координаты X и Z не могут быть null.");
+        }
+        if (person.getLocation().getName() != null && person.getLocation().getName().length() > 400) {
+            throw new IllegalArgumentException("Длина названия местоположения не должна превышать 400 символов.");
+        }
     }
 
     public String add(Person person) {
+        requireValid(person);
         person.setId(nextId++);
         person.setCreationDate(java.time.LocalDateTime.now());
         collection.add(person);
+        index.onChange(null, person);
+        firePut(person);
         return "Новый человек успешно добавлен с ID: " + person.getId();
     }
 
     public String addIfMin(Person person) {
-        Optional<Person> minPerson = collection.stream().min(Person::compareTo);
-        if (minPerson.isEmpty() || person.compareTo(minPerson.get()) < 0) {
+        if (collection.isEmpty() || person.compareTo(collection.first()) < 0) {
             return add(person);
         }
         return "Элемент не был добавлен, так как он не меньше минимального.";
     }
 
     public String update(long id, Person updatedPersonData) {
-        Optional<Person> personOptional = collection.stream().filter(p -> p.getId() == id).findFirst();
-        if (personOptional.isPresent()) {
-            Person personToUpdate = personOptional.get();
+        requireValid(updatedPersonData);
+        Person personToUpdate = findById(id);
+        if (personToUpdate != null) {
             collection.remove(personToUpdate);
 
             updatedPersonData.setId(id);
             updatedPersonData.setCreationDate(personToUpdate.getCreationDate());
             collection.add(updatedPersonData);
+            index.onChange(personToUpdate, updatedPersonData);
+            firePut(updatedPersonData);
             return "Человек с ID " + id + " успешно обновлен.";
         }
         return "Человек с ID " + id + " не найден.";
     }
 
     public String removeById(long id) {
-        boolean removed = collection.removeIf(person -> person.getId() == id);
+        Person person = findById(id);
+        boolean removed = person != null && collection.remove(person);
+        if (removed) {
+            index.onChange(person, null);
+            fireRemove(id);
+        }
         return removed ? "Человек с ID " + id + " успешно удален." : "Человек с ID " + id + " не найден.";
     }
 
     public String clear() {
         collection.clear();
         nextId = 1;
+        index.onClear();
+        fireClear();
         return "Коллекция успешно очищена.";
     }
 
+    /**
+     * Применяет изменение, полученное с основного сервера: добавляет элемент или заменяет элемент с тем же id.
+     * В отличие от {@link #add(Person)}, id и дата создания не назначаются.
+     * @param person Элемент в том виде, в каком он хранится на основном сервере.
+     */
+    public void applyPut(Person person) {
+        Person previous = findById(person.getId());
+        if (previous != null) collection.remove(previous);
+        collection.add(person);
+        nextId = Math.max(nextId, person.getId() + 1);
+        index.onChange(previous, person);
+        firePut(person);
+    }
+
+    /**
+     * Применяет удаление, полученное с основного сервера.
+     * @param id Идентификатор удаленного элемента.
+     */
+    public void applyRemove(long id) {
+        Person previous = findById(id);
+        if (previous != null && collection.remove(previous)) {
+            index.onChange(previous, null);
+            fireRemove(id);
+        }
+    }
+
     public String removeGreater(Person person) {
-        int initialSize = collection.size();
-        collection = collection.stream()
-                .filter(p -> p.compareTo(person) <= 0)
-                .collect(Collectors.toCollection(TreeSet::new));
-        int removedCount = initialSize - collection.size();
+        int removedCount = removeMatching(p -> p.compareTo(person) > 0);
         return "Удалено " + removedCount + " элементов, больших чем заданный.";
     }
 
     public String removeLower(Person person) {
-        int initialSize = collection.size();
-        collection = collection.stream()
-                .filter(p -> p.compareTo(person) >= 0)
-                .collect(Collectors.toCollection(TreeSet::new));
-        int removedCount = initialSize - collection.size();
+        int removedCount = removeMatching(p -> p.compareTo(person) < 0);
         return "Удалено " + removedCount + " элементов, меньших чем заданный.";
     }
 
+    private int removeMatching(Predicate<Person> condition) {
+        int removedCount = 0;
+        Iterator<Person> iterator = collection.iterator();
+        while (iterator.hasNext()) {
+            Person p = iterator.next();
+            if (condition.test(p)) {
+                iterator.remove();
+                index.onChange(p, null);
+                fireRemove(p.getId());
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
     public double getAverageHeight() {
+        if (index.isReady()) {
+            return collection.isEmpty() ? 0.0 : (double) index.getHeightSum() / collection.size();
+        }
         return collection.stream()
                 .mapToLong(Person::getHeight)
                 .average()
@@ -109,6 +334,9 @@ public class CollectionManager {
     }
 
     public long countByHairColor(Color hairColor) {
+        if (index.isReady()) {
+            return index.countByHairColor(hairColor);
+        }
         return collection.stream()
                 .filter(p -> Objects.equals(p.getHairColor(), hairColor))
                 .count();
@@ -116,6 +344,7 @@ public class CollectionManager {
 
     public TreeSet<Person> filterLessThanHairColor(Color hairColor) {
         if (hairColor == null) return new TreeSet<>();
+        if (index.isReady() && index.countLessThanHairColor(hairColor) == 0) return new TreeSet<>();
         return collection.stream()
                 .filter(p -> p.getHairColor() != null && p.getHairColor().ordinal() < hairColor.ordinal())
                 .collect(Collectors.toCollection(TreeSet::new));
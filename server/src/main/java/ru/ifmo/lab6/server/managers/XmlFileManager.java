@@ -1,54 +1,68 @@
 package ru.ifmo.lab6.server.managers;
 
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.JAXBException;
-import jakarta.xml.bind.Marshaller;
-import jakarta.xml.bind.Unmarshaller;
-import jakarta.xml.bind.annotation.XmlAccessType;
-import jakarta.xml.bind.annotation.XmlAccessorType;
-import jakarta.xml.bind.annotation.XmlElement;
-import jakarta.xml.bind.annotation.XmlRootElement;
-import ru.ifmo.lab6.model.Coordinates;
-import ru.ifmo.lab6.model.Location;
 import ru.ifmo.lab6.model.Person;
-import ru.ifmo.lab6.util.LocalDateTimeAdapter;
+import ru.ifmo.lab6.server.events.CollectionLoadedEvent;
+import ru.ifmo.lab6.server.events.SnapshotWrittenEvent;
+import ru.ifmo.lab6.server.persistence.ParallelXmlLoader;
+import ru.ifmo.lab6.server.persistence.PersonXmlReader;
+import ru.ifmo.lab6.server.persistence.PersonXmlWriter;
+import ru.ifmo.lab6.server.persistence.SnapshotCompression;
+import ru.ifmo.lab6.server.persistence.SnapshotStore;
+import ru.ifmo.lab6.server.util.ServerConfig;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
 import java.util.TreeSet;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Управляет загрузкой и сохранением коллекции в XML файл.
+ * Чтение и запись выполняются потоково (StAX), по одному элементу {@code <person>},
+ * поэтому в памяти не строится ни дерево документа, ни промежуточная копия коллекции.
+ * Большие файлы загружаются параллельно ({@link ParallelXmlLoader}); режим задается свойством
+ * {@code lab6.load.parallel}: {@code auto} (по размеру файла), {@code true} или {@code false}.
+ * Файл может быть сжат gzip ({@link SnapshotCompression}); сжатый файл читается последовательно.
+ * Загрузка и сохранение порождают события JFR {@link CollectionLoadedEvent} и {@link SnapshotWrittenEvent}.
  */
-public class XmlFileManager {
+public class XmlFileManager implements SnapshotStore {
     private static final Logger LOGGER = Logger.getLogger(XmlFileManager.class.getName());
+    private static final String PARALLEL_MODE = ServerConfig.getString("lab6.load.parallel", "auto");
+    private static final long PARALLEL_THRESHOLD_BYTES = ServerConfig.getLong("lab6.load.parallelThresholdMb", 64) << 20;
+    private static final int LOAD_THREADS = ServerConfig.getInt("lab6.load.threads", Runtime.getRuntime().availableProcessors());
     private final String filePath;
 
-    // Вспомогательный класс-обертка для корректной сериализации/десериализации TreeSet
-    @XmlRootElement(name = "persons")
-    @XmlAccessorType(XmlAccessType.FIELD)
-    private static class PersonWrapper { // Добавлено ключевое слово 'static'
-        @XmlElement(name = "person")
-        private TreeSet<Person> persons = new TreeSet<>();
-
-        public PersonWrapper() {}
-
-        public PersonWrapper(TreeSet<Person> persons) {
-            this.persons = persons;
-        }
-
-        public TreeSet<Person> getPersons() {
-            return persons;
-        }
-    }
-
     public XmlFileManager(String filePath) {
         this.filePath = filePath.replace("\"", "");
     }
 
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    @Override
     public TreeSet<Person> load() {
+        CollectionLoadedEvent event = new CollectionLoadedEvent();
+        event.begin();
+        TreeSet<Person> loadedCollection = loadFile();
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.format = "xml";
+            event.persons = loadedCollection.size();
+            event.size = new File(filePath).length();
+            event.commit();
+        }
+        return loadedCollection;
+    }
+
+    private TreeSet<Person> loadFile() {
         File file = new File(filePath);
         if (!file.exists()) {
             LOGGER.info("Файл коллекции не найден по пути: " + filePath + ". Будет создана новая коллекция.");
@@ -58,12 +72,46 @@ public class XmlFileManager {
             LOGGER.info("Файл коллекции пуст. Создана новая коллекция.");
             return new TreeSet<>();
         }
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
-            JAXBContext context = JAXBContext.newInstance(PersonWrapper.class, Person.class, Coordinates.class, Location.class);
-            Unmarshaller unmarshaller = context.createUnmarshaller();
-            PersonWrapper wrapper = (PersonWrapper) unmarshaller.unmarshal(reader);
-            TreeSet<Person> loadedCollection = (wrapper != null && wrapper.getPersons() != null) ? wrapper.getPersons() : new TreeSet<>();
-            LOGGER.info("Коллекция успешно загружена. Элементов: " + loadedCollection.size());
+        boolean compressed;
+        try {
+            compressed = SnapshotCompression.isCompressed(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Не удалось прочитать файл коллекции. Будет использована пустая коллекция.", e);
+            return new TreeSet<>();
+        }
+        if (!compressed && useParallelLoader(file)) {
+            try {
+                long start = System.nanoTime();
+                ParallelXmlLoader loader = new ParallelXmlLoader(file.toPath(), LOAD_THREADS);
+                TreeSet<Person> loadedCollection = loader.load();
+                LOGGER.info("Коллекция успешно загружена параллельно за " + (System.nanoTime() - start) / 1_000_000 + " мс. Элементов: "
+                        + loadedCollection.size() + (loader.getSkipped() > 0 ? ", пропущено некорректных: " + loader.getSkipped() : ""));
+                return loadedCollection;
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Параллельная загрузка не удалась, выполняется последовательная загрузка.", e);
+            }
+        }
+        return loadSequential(file);
+    }
+
+    private boolean useParallelLoader(File file) {
+        switch (PARALLEL_MODE.toLowerCase()) {
+            case "true": return true;
+            case "false": return false;
+            default: return LOAD_THREADS > 1 && file.length() >= PARALLEL_THRESHOLD_BYTES;
+        }
+    }
+
+    private TreeSet<Person> loadSequential(File file) {
+        TreeSet<Person> loadedCollection = new TreeSet<>();
+        try (InputStream in = SnapshotCompression.decompressIfNeeded(new FileInputStream(file));
+             PersonXmlReader reader = new PersonXmlReader(in)) {
+            Person person;
+            while ((person = reader.next()) != null) {
+                loadedCollection.add(person);
+            }
+            LOGGER.info("Коллекция успешно загружена. Элементов: " + loadedCollection.size()
+                    + (reader.getSkipped() > 0 ? ", пропущено некорректных: " + reader.getSkipped() : ""));
             return loadedCollection;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Критическая ошибка при загрузке коллекции из файла. Будет использована пустая коллекция.", e);
@@ -71,15 +119,71 @@ public class XmlFileManager {
         }
     }
 
-    public void save(TreeSet<Person> collection) {
-        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8))) {
-            JAXBContext context = JAXBContext.newInstance(PersonWrapper.class, Person.class, Coordinates.class, Location.class);
-            Marshaller marshaller = context.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            PersonWrapper wrapper = new PersonWrapper(collection);
-            marshaller.marshal(wrapper, writer);
+    /**
+     * Сохраняет коллекцию в файл.
+     * Данные сначала пишутся во временный файл рядом с целевым, синхронизируются с диском (fsync)
+     * и только затем атомарно переименовываются поверх целевого файла,
+     * поэтому сбой во время сохранения не оставляет поврежденный файл.
+     * @param collection Коллекция для сохранения.
+     * @return true, если сохранение прошло успешно.
+     */
+    public boolean save(Collection<Person> collection) {
+        return save(collection, written -> { });
+    }
+
+    /**
+     * Сохраняет коллекцию в файл, сообщая о ходе записи.
+     * @param collection Коллекция для сохранения.
+     * @param progress Получает количество уже записанных элементов после каждого элемента.
+     * @return true, если сохранение прошло успешно.
+     */
+    @Override
+    public boolean save(Collection<Person> collection, LongConsumer progress) {
+        SnapshotWrittenEvent event = new SnapshotWrittenEvent();
+        event.begin();
+        boolean saved = writeFile(collection, progress);
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.format = "xml";
+            event.persons = collection.size();
+            event.size = new File(filePath).length();
+            event.succeeded = saved;
+            event.commit();
+        }
+        return saved;
+    }
+
+    private boolean writeFile(Collection<Person> collection, LongConsumer progress) {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             OutputStream out = SnapshotCompression.compress(fileOut);
+             PersonXmlWriter writer = new PersonXmlWriter(out)) {
+            for (Person person : collection) {
+                writer.write(person);
+                progress.accept(writer.getWritten());
+            }
+            writer.finish();
+            SnapshotCompression.finish(out);
+            fileOut.getFD().sync();
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Произошла ошибка при сохранении коллекции в файл!", e);
+            return false;
+        }
+        try {
+            moveAtomically(temp, target);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Не удалось заменить файл коллекции сохраненной копией " + temp, e);
+            return false;
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
-}
\ No newline at end of file
+}
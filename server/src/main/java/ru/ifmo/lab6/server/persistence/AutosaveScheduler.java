@@ -0,0 +1,113 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.server.managers.CollectionManager;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Планировщик автосохранения коллекции.
+ * <p>
+ * Снимок запускается после N изменений или через T секунд после последнего сохранения —
+ * что наступит раньше. Если коллекция не изменялась, сохранение пропускается.
+ * Пока предыдущий снимок записывается, новый не запускается: все изменения за это время
+ * попадут в один следующий снимок.
+ * <p>
+ * Решение принимается в потоке цикла событий ({@link #poll()}), где коллекцию можно безопасно
+ * зафиксировать; сама запись выполняется фоновым потоком {@link SnapshotService}.
+ * Таймер только ставит проверку в очередь цикла событий и не трогает коллекцию.
+ */
+public class AutosaveScheduler implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(AutosaveScheduler.class.getName());
+    private static final long MAX_TICK_MS = 1000;
+
+    private final CollectionManager collectionManager;
+    private final SnapshotService snapshotService;
+    private final long maxChanges;
+    private final long intervalMs;
+    private ScheduledExecutorService timer;
+
+    private long lastSaveAt = System.currentTimeMillis();
+    private long autosaves;
+    private long skippedClean;
+
+    /**
+     * @param collectionManager Менеджер коллекции.
+     * @param snapshotService Сервис фонового сохранения снимков.
+     * @param maxChanges Количество изменений, после которого запускается снимок (0 — не учитывать).
+     * @param intervalMs Максимальный интервал между сохранениями в миллисекундах (0 — не учитывать).
+     */
+    public AutosaveScheduler(CollectionManager collectionManager, SnapshotService snapshotService,
+                             long maxChanges, long intervalMs) {
+        this.collectionManager = collectionManager;
+        this.snapshotService = snapshotService;
+        this.maxChanges = Math.max(0, maxChanges);
+        this.intervalMs = Math.max(0, intervalMs);
+    }
+
+    /**
+     * Запускает таймер, который периодически ставит {@link #poll()} в очередь цикла событий.
+     * @param loop Исполнитель задач в потоке цикла событий.
+     */
+    public void start(Executor loop) {
+        if (intervalMs == 0) return;
+        long tick = Math.min(intervalMs, MAX_TICK_MS);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "autosave-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(() -> loop.execute(this::poll), tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Проверяет политику и при необходимости запускает фоновый снимок.
+     * Вызывается в потоке цикла событий; проверка стоит несколько сравнений.
+     */
+    public void poll() {
+        if (snapshotService.isRunning()) return;
+        long pending = snapshotService.getPendingChanges(collectionManager);
+        long now = System.currentTimeMillis();
+        boolean byChanges = maxChanges > 0 && pending >= maxChanges;
+        boolean byTime = intervalMs > 0 && now - lastSaveAt >= intervalMs;
+        if (!byChanges && !byTime) return;
+        lastSaveAt = now;
+        if (pending == 0) {
+            skippedClean++;
+            return;
+        }
+        if (snapshotService.requestSnapshot(collectionManager)) {
+            autosaves++;
+            LOGGER.info("Автосохранение (" + (byChanges ? "изменений: " + pending : "прошло " + intervalMs / 1000 + " с")
+                    + ") запущено в фоне.");
+        }
+    }
+
+    /**
+     * Сбрасывает отсчет времени после сохранения, запущенного вручную.
+     */
+    public void onManualSave() {
+        lastSaveAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return Описание политики и счетчиков автосохранения для консоли сервера.
+     */
+    public String getStatus() {
+        return "Автосохранение: " + (maxChanges > 0 ? "каждые " + maxChanges + " изменений" : "без порога изменений")
+                + (intervalMs > 0 ? " или " + intervalMs / 1000 + " с" : ", без интервала")
+                + "; несохраненных изменений " + snapshotService.getPendingChanges(collectionManager)
+                + ", автосохранений " + autosaves + ", пропущено без изменений " + skippedClean + ".";
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+}
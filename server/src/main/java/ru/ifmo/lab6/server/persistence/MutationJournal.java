@@ -0,0 +1,456 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionListener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений коллекции (write-ahead log).
+ * <p>
+ * Каждое изменение коллекции дописывается в конец файла как отдельная запись
+ * {@code [длина][crc32][тип операции][данные]}. Записи накапливаются в памяти и сбрасываются на диск
+ * фоновым потоком: одна операция fsync подтверждает сразу всю накопленную группу (group commit).
+ * Номер последней подтвержденной записи доступен через {@link #getDurableSequence()}, что позволяет
+ * отправлять ответы клиентам только после того, как изменение стало устойчивым.
+ * <p>
+ * При запуске журнал применяется к коллекции, загруженной из последнего снимка ({@link #replay(TreeSet)}).
+ * Снимок делается в два шага: в момент фиксации состояния коллекции запоминается позиция в журнале
+ * ({@link #markCheckpoint()}), а после того как снимок надежно записан, из журнала удаляются записи
+ * до этой позиции ({@link #completeCheckpoint(CheckpointMark)}). Записи, сделанные во время
+ * фоновой записи снимка, сохраняются, а размер журнала пропорционален числу изменений после снимка.
+ */
+public class MutationJournal implements CollectionListener, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(MutationJournal.class.getName());
+    private static final int MAGIC = 0x4C364A52; // "L6JR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 << 20;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    private final Path path;
+    private final long groupDelayMs;
+    private FileChannel channel;
+
+    private final Object lock = new Object();
+    private final Object ioLock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+
+    private long lastSequence;
+    private volatile long durableSequence;
+    private volatile long syncCount;
+    private volatile long syncNanos;
+    private long checkpointSequence;
+    // Логические смещения: позиция в журнале с учетом уже удаленных из начала файла байт.
+    private long appendedEnd;
+    private long droppedBytes;
+    private volatile boolean closed;
+    private volatile Runnable syncListener = () -> { };
+    private Thread flusher;
+
+    /**
+     * Позиция в журнале, соответствующая зафиксированному для снимка состоянию коллекции.
+     */
+    public static final class CheckpointMark {
+        private final long offset;
+        private final long sequence;
+
+        private CheckpointMark(long offset, long sequence) {
+            this.offset = offset;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Открывает (или создает) файл журнала.
+     * @param path Путь к файлу журнала.
+     * @param groupDelayMs Дополнительное ожидание перед fsync для накопления группы (0 — без ожидания).
+     * @throws IOException если файл не удалось открыть.
+     */
+    public MutationJournal(Path path, long groupDelayMs) throws IOException {
+        this.path = path;
+        this.groupDelayMs = Math.max(0, groupDelayMs);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader();
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                throw new IOException("Файл " + path + " не является журналом изменений коллекции.");
+            }
+        }
+        appendedEnd = channel.size();
+    }
+
+    /**
+     * Применяет записи журнала к коллекции, загруженной из снимка.
+     * Чтение останавливается на первой неполной или поврежденной записи (например, оборванной при сбое);
+     * хвост файла после нее отбрасывается.
+     * @param collection Коллекция из последнего снимка.
+     * @return Количество примененных записей.
+     * @throws IOException если файл не удалось прочитать.
+     */
+    public long replay(TreeSet<Person> collection) throws IOException {
+        long position = HEADER_SIZE;
+        long applied = 0;
+        long size = channel.size();
+        channel.position(HEADER_SIZE);
+        // Поток не закрывается: его закрытие закрыло бы и сам канал журнала.
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        while (position < size) {
+            int length;
+            long checksum;
+            byte[] payload;
+            try {
+                length = in.readInt();
+                checksum = in.readInt() & 0xFFFFFFFFL;
+                if (length <= 0 || length > MAX_RECORD_SIZE) break;
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(payload);
+            if (crc.getValue() != checksum) break;
+            try {
+                apply(collection, payload);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Поврежденная запись журнала на позиции " + position, e);
+                break;
+            }
+            position += 8 + length;
+            applied++;
+        }
+        if (position < size) {
+            LOGGER.warning("Журнал " + path + " содержит неполную запись на позиции " + position + ". Хвост журнала отброшен.");
+            channel.truncate(position);
+        }
+        channel.position(position);
+        appendedEnd = position;
+        lastSequence = applied;
+        durableSequence = applied;
+        checkpointSequence = 0;
+        if (applied > 0) {
+            LOGGER.info("Из журнала восстановлено изменений: " + applied);
+        }
+        return applied;
+    }
+
+    private static void apply(TreeSet<Person> collection, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        switch (op) {
+            case OP_PUT:
+                Person person = PersonCodec.read(in);
+                collection.remove(person);
+                collection.add(person);
+                break;
+            case OP_REMOVE:
+                // Элементы сравниваются по id, поэтому для удаления достаточно "пустого" элемента с тем же id.
+                Person key = new Person();
+                key.setId(in.readLong());
+                collection.remove(key);
+                break;
+            case OP_CLEAR:
+                collection.clear();
+                break;
+            default:
+                throw new IOException("Неизвестный тип записи журнала: " + op);
+        }
+    }
+
+    /**
+     * Запускает фоновый поток, сбрасывающий записи на диск.
+     */
+    public void start() {
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Задает действие, вызываемое после каждого успешного fsync (например, пробуждение цикла событий).
+     */
+    public void setSyncListener(Runnable listener) {
+        this.syncListener = listener;
+    }
+
+    public long getLastSequence() {
+        synchronized (lock) {
+            return lastSequence;
+        }
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * @return Количество успешных записей групп с fsync.
+     */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * @return Суммарное время записи групп вместе с fsync, нс.
+     */
+    public long getSyncNanos() {
+        return syncNanos;
+    }
+
+    /**
+     * @return Количество записей с момента последнего снимка.
+     */
+    public long getRecordsSinceCheckpoint() {
+        synchronized (lock) {
+            return lastSequence - checkpointSequence;
+        }
+    }
+
+    @Override
+    public void onPut(Person person) {
+        try {
+            recordOut.writeByte(OP_PUT);
+            PersonCodec.write(recordOut, person);
+            append();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось закодировать запись журнала", e);
+        } finally {
+            // Иначе байты недописанной записи попали бы в начало следующей.
+            recordBuffer.reset();
+        }
+    }
+
+    @Override
+    public void onRemove(long id) {
+        try {
+            recordOut.writeByte(OP_REMOVE);
+            recordOut.writeLong(id);
+            append();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось закодировать запись журнала", e);
+        } finally {
+            recordBuffer.reset();
+        }
+    }
+
+    @Override
+    public void onClear() {
+        try {
+            recordOut.writeByte(OP_CLEAR);
+            append();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось закодировать запись журнала", e);
+        } finally {
+            recordBuffer.reset();
+        }
+    }
+
+    private void append() {
+        byte[] payload = recordBuffer.toByteArray();
+        crc.reset();
+        crc.update(payload);
+        synchronized (lock) {
+            writeInt(pending, payload.length);
+            writeInt(pending, (int) crc.getValue());
+            pending.write(payload, 0, payload.length);
+            lastSequence++;
+            appendedEnd += 8 + payload.length;
+            lock.notifyAll();
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                synchronized (lock) {
+                    while (pending.size() == 0 && !closed) {
+                        lock.wait();
+                    }
+                }
+                if (groupDelayMs > 0) {
+                    Thread.sleep(groupDelayMs);
+                }
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Ошибка записи журнала изменений", e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Записывает накопленную группу записей и выполняет fsync.
+     * @throws IOException если запись не удалась (группа остается в памяти и будет записана повторно).
+     */
+    public void flush() throws IOException {
+        synchronized (ioLock) {
+            ByteArrayOutputStream batch;
+            long sequence;
+            synchronized (lock) {
+                if (pending.size() == 0) return;
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                sequence = lastSequence;
+            }
+            long start = channel.position();
+            long syncStart = System.nanoTime();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(start);
+                    channel.position(start);
+                } catch (IOException ignored) {
+                    // Хвост будет отброшен при следующем запуске как неполная запись.
+                }
+                synchronized (lock) {
+                    // Возвращаем группу в начало очереди, чтобы повторить запись.
+                    pending.writeTo(batch);
+                    pending.reset();
+                    spare = pending;
+                    pending = batch;
+                }
+                throw e;
+            }
+            batch.reset();
+            durableSequence = sequence;
+            syncNanos += System.nanoTime() - syncStart;
+            syncCount++;
+        }
+        syncListener.run();
+    }
+
+    /**
+     * Запоминает текущую позицию журнала. Вызывается в потоке, изменяющем коллекцию,
+     * в тот же момент, когда фиксируется состояние коллекции для снимка.
+     * @return Отметка для {@link #completeCheckpoint(CheckpointMark)}.
+     */
+    public CheckpointMark markCheckpoint() {
+        synchronized (lock) {
+            return new CheckpointMark(appendedEnd, lastSequence);
+        }
+    }
+
+    /**
+     * Удаляет из журнала записи, уже вошедшие в надежно записанный снимок.
+     * Оставшиеся записи копируются в новый файл, который атомарно заменяет старый,
+     * поэтому сбой в процессе не теряет данные (в худшем случае старые записи будут
+     * повторно применены к новому снимку, что безопасно). Может вызываться из фонового потока.
+     * @param mark Отметка, полученная при фиксации состояния для снимка.
+     * @throws IOException если журнал не удалось переписать.
+     */
+    public void completeCheckpoint(CheckpointMark mark) throws IOException {
+        synchronized (ioLock) {
+            flush();
+            long physicalStart = mark.offset - droppedBytes;
+            if (physicalStart > HEADER_SIZE) {
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putInt(MAGIC).putInt(VERSION).flip();
+                    out.write(header);
+                    long position = physicalStart;
+                    long end = channel.size();
+                    while (position < end) {
+                        position += channel.transferTo(position, end - position, out);
+                    }
+                    out.force(true);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+            synchronized (lock) {
+                droppedBytes += Math.max(0, physicalStart - HEADER_SIZE);
+                checkpointSequence = Math.max(checkpointSequence, mark.sequence);
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.position(HEADER_SIZE);
+        channel.force(true);
+    }
+
+    /**
+     * Сбрасывает оставшиеся записи на диск и закрывает журнал.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (ioLock) {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
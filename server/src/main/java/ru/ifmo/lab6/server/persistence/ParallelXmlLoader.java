@@ -0,0 +1,220 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Person;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Параллельный загрузчик больших файлов коллекции.
+ * Файл делится на участки по границам {@code <person>}, каждый участок разбирается
+ * отдельным {@link PersonXmlReader} в пуле потоков, а результаты сливаются в один TreeSet.
+ * <p>
+ * Поиск границ по байтам корректен для файлов, которые пишет {@link PersonXmlWriter} (и JAXB):
+ * в тексте символ '&lt;' всегда экранирован, а комментарии и CDATA не используются.
+ * Если файл устроен иначе, разбор участка завершится ошибкой и вызывающий код
+ * должен выполнить обычную последовательную загрузку.
+ */
+public final class ParallelXmlLoader {
+    private static final Logger LOGGER = Logger.getLogger(ParallelXmlLoader.class.getName());
+    private static final byte[] PERSON_START = "<person>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ROOT_END = "</persons>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_PREFIX = "<persons>".getBytes(StandardCharsets.US_ASCII);
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final Path path;
+    private final int threads;
+    private long skipped;
+
+    public ParallelXmlLoader(Path path, int threads) {
+        this.path = path;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Загружает коллекцию, разбирая участки файла параллельно.
+     * @return Загруженная коллекция.
+     * @throws IOException если файл не удалось прочитать или разобрать.
+     */
+    public TreeSet<Person> load() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long first = find(channel, PERSON_START, 0, size);
+            if (first < 0) {
+                return new TreeSet<>();
+            }
+            long rootEnd = findLast(channel, ROOT_END, size);
+            if (rootEnd < first) {
+                throw new IOException("В файле не найден закрывающий тег </persons>.");
+            }
+
+            List<long[]> ranges = split(channel, first, rootEnd);
+            List<List<Person>> parts = parseAll(channel, ranges);
+            return PersonSets.fromOrderedParts(parts);
+        }
+    }
+
+    /**
+     * @return Количество элементов, пропущенных из-за некорректных данных.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    private List<long[]> split(FileChannel channel, long first, long end) throws IOException {
+        long length = end - first;
+        int chunks = (int) Math.max(1, Math.min((long) threads * CHUNKS_PER_THREAD, length / MIN_CHUNK_SIZE));
+        List<long[]> ranges = new ArrayList<>(chunks);
+        long start = first;
+        for (int k = 1; k < chunks; k++) {
+            long boundary = find(channel, PERSON_START, first + length * k / chunks, end);
+            if (boundary < 0) break;
+            if (boundary > start) {
+                ranges.add(new long[]{start, boundary});
+                start = boundary;
+            }
+        }
+        ranges.add(new long[]{start, end});
+        return ranges;
+    }
+
+    private List<List<Person>> parseAll(FileChannel channel, List<long[]> ranges) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, ranges.size()), r -> {
+            Thread t = new Thread(r, "xml-loader-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<List<Person>>> futures = new ArrayList<>(ranges.size());
+            long[] skippedPerChunk = new long[ranges.size()];
+            for (int i = 0; i < ranges.size(); i++) {
+                final int index = i;
+                final long[] range = ranges.get(i);
+                futures.add(pool.submit(() -> parseRange(channel, range[0], range[1], skippedPerChunk, index)));
+            }
+            List<List<Person>> parts = new ArrayList<>(futures.size());
+            for (Future<List<Person>> future : futures) {
+                parts.add(future.get());
+            }
+            for (long s : skippedPerChunk) skipped += s;
+            LOGGER.info("Файл разобран параллельно: участков " + ranges.size() + ", потоков " + Math.min(threads, ranges.size()));
+            return parts;
+        } catch (ExecutionException e) {
+            throw new IOException("Ошибка разбора участка файла: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Параллельная загрузка была прервана.", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<Person> parseRange(FileChannel channel, long start, long end,
+                                           long[] skippedPerChunk, int index) throws Exception {
+        InputStream body = new BufferedInputStream(new RangeInputStream(channel, start, end), SCAN_BUFFER_SIZE);
+        InputStream chunk = new SequenceInputStream(
+                Collections.enumeration(List.of(new ByteArrayInputStream(CHUNK_PREFIX), body, new ByteArrayInputStream(ROOT_END))));
+        List<Person> result = new ArrayList<>();
+        try (PersonXmlReader reader = new PersonXmlReader(chunk)) {
+            Person person;
+            while ((person = reader.next()) != null) {
+                result.add(person);
+            }
+            skippedPerChunk[index] = reader.getSkipped();
+        }
+        return result;
+    }
+
+    private static long find(FileChannel channel, byte[] pattern, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            int index = indexOf(buffer.array(), read, pattern);
+            if (index >= 0) return position + index;
+            if (position + read >= to) break;
+            position += Math.max(1, read - pattern.length + 1);
+        }
+        return -1;
+    }
+
+    private static long findLast(FileChannel channel, byte[] pattern, long size) throws IOException {
+        long from = Math.max(0, size - SCAN_BUFFER_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size - from));
+        channel.read(buffer, from);
+        byte[] data = buffer.array();
+        for (int i = buffer.position() - pattern.length; i >= 0; i--) {
+            if (matchesAt(data, i, pattern)) return from + i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        for (int i = 0; i <= length - pattern.length; i++) {
+            if (matchesAt(data, i, pattern)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(byte[] data, int offset, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[offset + j] != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Поток, читающий диапазон файла позиционными чтениями.
+     * Позиционное чтение потокобезопасно, поэтому один канал разделяется всеми участками.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read > 0) position += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Color;
+import ru.ifmo.lab6.model.Coordinates;
+import ru.ifmo.lab6.model.Country;
+import ru.ifmo.lab6.model.Location;
+import ru.ifmo.lab6.model.Person;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Компактное двоичное представление Person для журнала изменений.
+ * Необязательные поля кодируются битовой маской, строки — длиной и байтами UTF-8.
+ */
+public final class PersonCodec {
+    private static final int HAS_EYE_COLOR = 1;
+    private static final int HAS_HAIR_COLOR = 1 << 1;
+    private static final int HAS_NATIONALITY = 1 << 2;
+    private static final int HAS_LOCATION_NAME = 1 << 3;
+
+    private PersonCodec() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static void write(DataOutput out, Person person) throws IOException {
+        int flags = (person.getEyeColor() != null ? HAS_EYE_COLOR : 0)
+                | (person.getHairColor() != null ? HAS_HAIR_COLOR : 0)
+                | (person.getNationality() != null ? HAS_NATIONALITY : 0)
+                | (person.getLocation().getName() != null ? HAS_LOCATION_NAME : 0);
+        out.writeByte(flags);
+        out.writeLong(person.getId());
+        writeString(out, person.getName());
+        out.writeDouble(person.getCoordinates().getX());
+        out.writeFloat(person.getCoordinates().getY());
+        out.writeLong(person.getCreationDate().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(person.getCreationDate().getNano());
+        out.writeLong(person.getHeight());
+        if (person.getEyeColor() != null) out.writeByte(person.getEyeColor().ordinal());
+        if (person.getHairColor() != null) out.writeByte(person.getHairColor().ordinal());
+        if (person.getNationality() != null) out.writeByte(person.getNationality().ordinal());
+        Location location = person.getLocation();
+        out.writeFloat(location.getX());
+        out.writeDouble(location.getY());
+        out.writeDouble(location.getZ());
+        if (location.getName() != null) writeString(out, location.getName());
+    }
+
+    public static Person read(DataInput in) throws IOException {
+        int flags = in.readUnsignedByte();
+        Person person = new Person();
+        person.setId(in.readLong());
+        person.setName(readString(in));
+        person.setCoordinates(new Coordinates(in.readDouble(), in.readFloat()));
+        long epochSecond = in.readLong();
+        int nano = in.readInt();
+        person.setCreationDate(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+        person.setHeight(in.readLong());
+        if ((flags & HAS_EYE_COLOR) != 0) person.setEyeColor(Color.values()[in.readUnsignedByte()]);
+        if ((flags & HAS_HAIR_COLOR) != 0) person.setHairColor(Color.values()[in.readUnsignedByte()]);
+        if ((flags & HAS_NATIONALITY) != 0) person.setNationality(Country.values()[in.readUnsignedByte()]);
+        float x = in.readFloat();
+        double y = in.readDouble();
+        double z = in.readDouble();
+        String name = (flags & HAS_LOCATION_NAME) != 0 ? readString(in) : null;
+        person.setLocation(new Location(x, y, z, name));
+        return person;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Некорректная длина строки: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Person;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Построение TreeSet из элементов, прочитанных из снимка.
+ */
+public final class PersonSets {
+
+    private PersonSets() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Сливает последовательные части в TreeSet. Снимок, записанный из TreeSet, уже отсортирован по id,
+     * и тогда дерево строится за линейное время; иначе элементы добавляются по одному.
+     * @param parts Части в порядке следования в файле.
+     * @return Коллекция со всеми элементами.
+     */
+    public static TreeSet<Person> fromOrderedParts(List<List<Person>> parts) {
+        int total = 0;
+        boolean strictlyAscending = true;
+        Person previous = null;
+        for (List<Person> part : parts) {
+            total += part.size();
+            for (Person person : part) {
+                if (previous != null && previous.compareTo(person) >= 0) {
+                    strictlyAscending = false;
+                }
+                previous = person;
+            }
+        }
+        if (strictlyAscending) {
+            Person[] sorted = new Person[total];
+            int position = 0;
+            for (List<Person> part : parts) {
+                for (Person person : part) {
+                    sorted[position++] = person;
+                }
+            }
+            return new TreeSet<>(new SortedArrayView(sorted, 0, total));
+        }
+        TreeSet<Person> result = new TreeSet<>();
+        for (List<Person> part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    /**
+     * Неизменяемое множество поверх массива, отсортированного по возрастанию id без повторов.
+     * <p>
+     * Конструктор {@link TreeSet#TreeSet(SortedSet)} строит дерево из уже отсортированных элементов
+     * за линейное время, а из обычной коллекции — вставкой по одному элементу. Других способов
+     * линейного построения JDK не предоставляет, поэтому элементы снимка передаются через это
+     * представление. Оно полноценно реализует {@link SortedSet}: поиск и подмножества выполняются
+     * двоичным поиском по массиву; ключи подмножеств вне диапазона представления ограничиваются им.
+     */
+    private static final class SortedArrayView extends AbstractSet<Person> implements SortedSet<Person> {
+        private final Person[] elements;
+        private final int from;
+        private final int to;
+
+        SortedArrayView(Person[] elements, int from, int to) {
+            this.elements = elements;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<Person> iterator() {
+            return Arrays.asList(elements).subList(from, to).iterator();
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Person person && Arrays.binarySearch(elements, from, to, person) >= 0;
+        }
+
+        @Override
+        public Comparator<? super Person> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<Person> subSet(Person fromElement, Person toElement) {
+            if (fromElement.compareTo(toElement) > 0) {
+                throw new IllegalArgumentException("Начало подмножества больше его конца.");
+            }
+            return new SortedArrayView(elements, lowerBound(fromElement), lowerBound(toElement));
+        }
+
+        @Override
+        public SortedSet<Person> headSet(Person toElement) {
+            return new SortedArrayView(elements, from, lowerBound(toElement));
+        }
+
+        @Override
+        public SortedSet<Person> tailSet(Person fromElement) {
+            return new SortedArrayView(elements, lowerBound(fromElement), to);
+        }
+
+        @Override
+        public Person first() {
+            if (from == to) throw new NoSuchElementException();
+            return elements[from];
+        }
+
+        @Override
+        public Person last() {
+            if (from == to) throw new NoSuchElementException();
+            return elements[to - 1];
+        }
+
+        /**
+         * @return Индекс первого элемента, не меньшего заданного, в пределах представления.
+         */
+        private int lowerBound(Person key) {
+            int index = Arrays.binarySearch(elements, from, to, key);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Color;
+import ru.ifmo.lab6.model.Coordinates;
+import ru.ifmo.lab6.model.Country;
+import ru.ifmo.lab6.model.Location;
+import ru.ifmo.lab6.model.Person;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Logger;
+
+/**
+ * Потоковый (StAX) читатель файла коллекции.
+ * Разбирает элементы {@code <person>} по одному, не строя дерево документа в памяти,
+ * поэтому дополнительная память не зависит от размера файла.
+ * Формат совпадает с тем, что раньше читал JAXB: порядок полей произвольный,
+ * неизвестные элементы пропускаются, отсутствующие элементы означают null.
+ */
+public final class PersonXmlReader implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(PersonXmlReader.class.getName());
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final XMLStreamReader reader;
+    private long skipped;
+
+    public PersonXmlReader(InputStream in) throws XMLStreamException {
+        this.reader = newInputFactory().createXMLStreamReader(in);
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Читает следующий корректный элемент коллекции.
+     * Элементы, не прошедшие валидацию модели, пропускаются с предупреждением в логе.
+     * @return Следующий объект Person или null, если документ закончился.
+     * @throws XMLStreamException если документ синтаксически некорректен.
+     */
+    public Person next() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "person".equals(reader.getLocalName())) {
+                Person person = readPerson();
+                if (person != null) {
+                    return person;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Количество элементов, пропущенных из-за некорректных данных.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    private Person readPerson() throws XMLStreamException {
+        String id = null, name = null, creationDate = null, height = null;
+        String eyeColor = null, hairColor = null, nationality = null;
+        String[] coordinates = null, location = null;
+
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "id": id = reader.getElementText(); break;
+                case "name": name = reader.getElementText(); break;
+                case "creationDate": creationDate = reader.getElementText(); break;
+                case "height": height = reader.getElementText(); break;
+                case "eyeColor": eyeColor = reader.getElementText(); break;
+                case "hairColor": hairColor = reader.getElementText(); break;
+                case "nationality": nationality = reader.getElementText(); break;
+                case "coordinates": coordinates = readFields("x", "y"); break;
+                case "location": location = readFields("x", "y", "z", "name"); break;
+                default: skipElement(); break;
+            }
+        }
+
+        try {
+            Person person = new Person();
+            if (id != null) person.setId(Long.parseLong(id.trim()));
+            if (name != null) person.setName(name);
+            if (coordinates != null) {
+                Coordinates c = new Coordinates();
+                c.setX(parseDouble(coordinates[0]));
+                if (coordinates[1] != null) c.setY(parseFloat(coordinates[1]));
+                person.setCoordinates(c);
+            }
+            if (creationDate != null) person.setCreationDate(LocalDateTime.parse(creationDate.trim(), DATE_FORMATTER));
+            if (height != null) person.setHeight(Long.parseLong(height.trim()));
+            if (eyeColor != null) person.setEyeColor(Color.valueOf(eyeColor.trim()));
+            if (hairColor != null) person.setHairColor(Color.valueOf(hairColor.trim()));
+            if (nationality != null) person.setNationality(Country.valueOf(nationality.trim()));
+            if (location != null) {
+                Location l = new Location();
+                l.setX(parseFloat(location[0]));
+                if (location[1] != null) l.setY(parseDouble(location[1]));
+                l.setZ(parseDouble(location[2]));
+                l.setName(location[3]);
+                person.setLocation(l);
+            }
+            return person;
+        } catch (IllegalArgumentException | DateTimeException | NullPointerException e) {
+            skipped++;
+            LOGGER.warning("Пропущен некорректный элемент коллекции (id=" + id + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Читает текстовые значения вложенных элементов с заданными именами.
+     * @return Массив значений в порядке имен; отсутствующие элементы равны null.
+     */
+    private String[] readFields(String... names) throws XMLStreamException {
+        String[] values = new String[names.length];
+        while (nextChild()) {
+            String local = reader.getLocalName();
+            boolean matched = false;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(local)) {
+                    values[i] = reader.getElementText();
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) skipElement();
+        }
+        return values;
+    }
+
+    /**
+     * Переходит к следующему дочернему элементу текущего элемента.
+     * @return true, если найден START_ELEMENT; false, если достигнут конец родителя.
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) return true;
+            if (event == XMLStreamConstants.END_ELEMENT) return false;
+        }
+        return false;
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    // Числа в формате xs:double/xs:float, как их печатает JAXB (INF, -INF, NaN).
+    static Double parseDouble(String value) {
+        if (value == null) return null;
+        String v = value.trim();
+        switch (v) {
+            case "INF": return Double.POSITIVE_INFINITY;
+            case "-INF": return Double.NEGATIVE_INFINITY;
+            default: return Double.parseDouble(v);
+        }
+    }
+
+    static Float parseFloat(String value) {
+        if (value == null) return null;
+        String v = value.trim();
+        switch (v) {
+            case "INF": return Float.POSITIVE_INFINITY;
+            case "-INF": return Float.NEGATIVE_INFINITY;
+            default: return Float.parseFloat(v);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            LOGGER.fine("Ошибка при закрытии XML-читателя: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Coordinates;
+import ru.ifmo.lab6.model.Location;
+import ru.ifmo.lab6.model.Person;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Потоковый писатель файла коллекции.
+ * Записывает элементы {@code <person>} по одному сразу в выходной поток.
+ * Вывод побайтно совпадает с форматированным выводом JAXB
+ * (заголовок со standalone="yes", отступ в 4 пробела, null-поля опускаются),
+ * поэтому существующие файлы коллекции остаются совместимыми в обе стороны.
+ */
+public final class PersonXmlWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final Writer out;
+    private long written;
+    private boolean finished;
+
+    public PersonXmlWriter(OutputStream out) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+    }
+
+    public void write(Person person) throws IOException {
+        if (written == 0) out.write("<persons>\n");
+        out.write("    <person>\n");
+        element(2, "id", Long.toString(person.getId()));
+        element(2, "name", person.getName());
+        Coordinates coordinates = person.getCoordinates();
+        if (coordinates != null) {
+            out.write("        <coordinates>\n");
+            element(3, "x", printDouble(coordinates.getX()));
+            element(3, "y", printFloat(coordinates.getY()));
+            out.write("        </coordinates>\n");
+        }
+        if (person.getCreationDate() != null) {
+            element(2, "creationDate", person.getCreationDate().format(DATE_FORMATTER));
+        }
+        element(2, "height", Long.toString(person.getHeight()));
+        if (person.getEyeColor() != null) element(2, "eyeColor", person.getEyeColor().name());
+        if (person.getHairColor() != null) element(2, "hairColor", person.getHairColor().name());
+        if (person.getNationality() != null) element(2, "nationality", person.getNationality().name());
+        Location location = person.getLocation();
+        if (location != null) {
+            out.write("        <location>\n");
+            element(3, "x", printFloat(location.getX()));
+            element(3, "y", printDouble(location.getY()));
+            element(3, "z", printDouble(location.getZ()));
+            element(3, "name", location.getName());
+            out.write("        </location>\n");
+        }
+        out.write("    </person>\n");
+        written++;
+    }
+
+    /**
+     * @return Количество уже записанных элементов.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    private void element(int level, String name, String value) throws IOException {
+        if (value == null) return;
+        for (int i = 0; i < level; i++) out.write("    ");
+        out.write('<');
+        out.write(name);
+        out.write('>');
+        escape(value);
+        out.write("</");
+        out.write(name);
+        out.write(">\n");
+    }
+
+    // Экранирование как у MinimumEscapeHandler из JAXB для текстового содержимого.
+    private void escape(String value) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement;
+            switch (value.charAt(i)) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '\r': replacement = "&#13;"; break;
+                default: continue;
+            }
+            out.write(value, start, i - start);
+            out.write(replacement);
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+    }
+
+    // Числа печатаются так же, как xs:double/xs:float в JAXB.
+    static String printDouble(Double value) {
+        if (value == null) return null;
+        if (value.isNaN()) return "NaN";
+        if (value == Double.POSITIVE_INFINITY) return "INF";
+        if (value == Double.NEGATIVE_INFINITY) return "-INF";
+        return String.valueOf(value.doubleValue());
+    }
+
+    static String printFloat(Float value) {
+        if (value == null) return null;
+        if (value.isNaN()) return "NaN";
+        if (value == Float.POSITIVE_INFINITY) return "INF";
+        if (value == Float.NEGATIVE_INFINITY) return "-INF";
+        return String.valueOf(value.floatValue());
+    }
+
+    /**
+     * Дописывает закрывающий корневой тег и сбрасывает буфер, не закрывая поток.
+     * Пустая коллекция записывается как {@code <persons/>}, как это делает JAXB.
+     * Позволяет вызывающему коду выполнить fsync до закрытия файла.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        out.write(written == 0 ? "<persons/>\n" : "</persons>\n");
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Завершает документ (если это еще не сделано) и закрывает поток.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.server.util.ServerConfig;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Потоковое сжатие файлов коллекции в формате gzip ({@code java.util.zip}).
+ * <p>
+ * Уровень сжатия задается свойством {@code lab6.snapshot.compression}: 0 — без сжатия (по умолчанию),
+ * 1 — самое быстрое, 9 — самое сильное. При загрузке сжатие определяется по сигнатуре gzip
+ * в начале файла, поэтому сервер читает и сжатые, и обычные файлы независимо от настройки.
+ * Данные сжимаются и распаковываются потоком, документ целиком в памяти не собирается.
+ */
+public final class SnapshotCompression {
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int LEVEL = Math.max(0, Math.min(9, ServerConfig.getInt("lab6.snapshot.compression", 0)));
+
+    private SnapshotCompression() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * @return true, если новые снимки нужно сжимать.
+     */
+    public static boolean isEnabled() {
+        return LEVEL > 0;
+    }
+
+    /**
+     * Оборачивает поток записи в сжимающий, если сжатие включено.
+     * После записи данных нужно вызвать {@link #finish(OutputStream)}.
+     * @param out Поток записи в файл.
+     * @return Сжимающий поток или исходный поток, если сжатие выключено.
+     */
+    public static OutputStream compress(OutputStream out) throws IOException {
+        if (!isEnabled()) {
+            return out;
+        }
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(LEVEL);
+            }
+        };
+    }
+
+    /**
+     * Дописывает хвост сжатого потока (без закрытия файла) и сбрасывает буферы.
+     * @param out Поток, полученный из {@link #compress(OutputStream)}.
+     */
+    public static void finish(OutputStream out) throws IOException {
+        if (out instanceof DeflaterOutputStream) {
+            ((DeflaterOutputStream) out).finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Возвращает поток чтения, распаковывающий данные, если они начинаются с сигнатуры gzip.
+     * @param in Поток чтения из файла.
+     * @return Распаковывающий поток или буферизованный исходный поток.
+     */
+    public static InputStream decompressIfNeeded(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2) {
+            return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return buffered;
+    }
+
+    /**
+     * @param path Путь к файлу.
+     * @return true, если файл начинается с сигнатуры gzip.
+     */
+    public static boolean isCompressed(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // читаем первые два байта
+            }
+            return magic.position() == 2 && (magic.get(0) & 0xFF) == GZIP_MAGIC_1 && (magic.get(1) & 0xFF) == GZIP_MAGIC_2;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Фоновое сохранение снимков коллекции.
+ * <p>
+ * В потоке цикла событий фиксируется только состояние коллекции ({@link CollectionManager#snapshot()})
+ * и позиция журнала изменений. Сама запись (во временный файл, fsync, атомарное переименование)
+ * выполняется отдельным потоком, поэтому обработка запросов во время сохранения не останавливается.
+ * Одновременно выполняется не более одного снимка; повторный запрос во время записи отклоняется.
+ */
+public class SnapshotService implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(SnapshotService.class.getName());
+    private static final DateTimeFormatter TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final SnapshotStore store;
+    private final MutationJournal journal;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong written = new AtomicLong();
+    private volatile long total;
+    private volatile long startedAt;
+    private volatile long lastCaptureMicros;
+    private volatile long lastDurationMs = -1;
+    private volatile long lastCompletedAt;
+    private volatile long lastSize;
+    private volatile boolean lastSucceeded;
+    private volatile long savedModificationCount;
+    private volatile long completedSnapshots;
+    private volatile long failedSnapshots;
+    private volatile long totalDurationMs;
+
+    /**
+     * @param store Хранилище, в которое пишутся снимки.
+     * @param journal Журнал изменений или null, если журнал отключен.
+     */
+    public SnapshotService(SnapshotStore store, MutationJournal journal) {
+        this.store = store;
+        this.journal = journal;
+    }
+
+    /**
+     * Запускает фоновое сохранение снимка. Вызывается в потоке, изменяющем коллекцию.
+     * @param collectionManager Менеджер коллекции.
+     * @return false, если предыдущий снимок еще записывается и новый не запущен.
+     */
+    public boolean requestSnapshot(CollectionManager collectionManager) {
+        return request(collectionManager, store, true);
+    }
+
+    /**
+     * Запускает фоновую выгрузку коллекции в другое хранилище (например, XML при двоичных снимках).
+     * Выгрузка не является контрольной точкой: журнал изменений не усекается.
+     * @param collectionManager Менеджер коллекции.
+     * @param target Хранилище, в которое выгружается коллекция.
+     * @return false, если предыдущий снимок еще записывается и выгрузка не запущена.
+     */
+    public boolean requestExport(CollectionManager collectionManager, SnapshotStore target) {
+        return request(collectionManager, target, false);
+    }
+
+    private boolean request(CollectionManager collectionManager, SnapshotStore target, boolean checkpoint) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        List<Person> view;
+        MutationJournal.CheckpointMark mark;
+        try {
+            long captureStart = System.nanoTime();
+            long modifications = checkpoint ? collectionManager.getModificationCount() : -1;
+            view = collectionManager.snapshot();
+            mark = checkpoint && journal != null ? journal.markCheckpoint() : null;
+            lastCaptureMicros = (System.nanoTime() - captureStart) / 1000;
+            begin(view.size());
+            executor.execute(() -> write(target, view, mark, modifications));
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Сохраняет снимок синхронно в вызывающем потоке (например, при завершении работы),
+     * предварительно дождавшись окончания уже идущего фонового снимка. Вызывается, только когда
+     * коллекция не изменяется (цикл событий остановлен): иначе изменение между фиксацией коллекции
+     * и отметкой журнала не попало бы в снимок, но было бы удалено из журнала.
+     * @param collectionManager Менеджер коллекции.
+     * @return true, если снимок сохранен.
+     */
+    public boolean saveNow(CollectionManager collectionManager) {
+        while (!running.compareAndSet(false, true)) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        long captureStart = System.nanoTime();
+        long modifications = collectionManager.getModificationCount();
+        List<Person> view = collectionManager.snapshot();
+        MutationJournal.CheckpointMark mark = journal != null ? journal.markCheckpoint() : null;
+        lastCaptureMicros = (System.nanoTime() - captureStart) / 1000;
+        begin(view.size());
+        return write(store, view, mark, modifications);
+    }
+
+    private void begin(long size) {
+        total = size;
+        written.set(0);
+        startedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @param modifications Значение счетчика изменений на момент фиксации или -1 для выгрузки.
+     */
+    private boolean write(SnapshotStore target, List<Person> view, MutationJournal.CheckpointMark mark, long modifications) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            succeeded = target.save(view, written::lazySet);
+            if (succeeded && modifications >= 0) {
+                savedModificationCount = modifications;
+            }
+            if (succeeded && mark != null) {
+                try {
+                    journal.completeCheckpoint(mark);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Снимок записан, но журнал изменений не удалось усечь", e);
+                }
+            }
+        } finally {
+            lastDurationMs = (System.nanoTime() - start) / 1_000_000;
+            lastCompletedAt = System.currentTimeMillis();
+            lastSize = view.size();
+            lastSucceeded = succeeded;
+            // Снимки не пересекаются (флаг running), поэтому счетчики меняет один поток.
+            if (succeeded) completedSnapshots++; else failedSnapshots++;
+            totalDurationMs += lastDurationMs;
+            running.set(false);
+        }
+        if (succeeded) {
+            LOGGER.info("Снимок коллекции сохранен в " + target.getFilePath() + ": элементов " + view.size() + ", фиксация " + lastCaptureMicros
+                    + " мкс, запись " + lastDurationMs + " мс.");
+        }
+        return succeeded;
+    }
+
+    /**
+     * Количество изменений, еще не попавших в снимок. Учитываются и изменения,
+     * восстановленные из журнала при запуске: они есть в коллекции, но не в файле снимка.
+     * @param collectionManager Менеджер коллекции.
+     * @return Количество несохраненных изменений; 0 означает, что коллекция совпадает со снимком.
+     */
+    public long getPendingChanges(CollectionManager collectionManager) {
+        long pending = collectionManager.getModificationCount() - savedModificationCount;
+        if (journal != null) {
+            pending = Math.max(pending, journal.getRecordsSinceCheckpoint());
+        }
+        return pending;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public long getCompletedSnapshots() {
+        return completedSnapshots;
+    }
+
+    public long getFailedSnapshots() {
+        return failedSnapshots;
+    }
+
+    /**
+     * @return Суммарное время записи всех снимков и выгрузок, мс.
+     */
+    public long getTotalDurationMs() {
+        return totalDurationMs;
+    }
+
+    /**
+     * @return Время записи последнего снимка, мс, или -1, если снимков еще не было.
+     */
+    public long getLastDurationMs() {
+        return lastDurationMs;
+    }
+
+    /**
+     * @return Время фиксации состояния коллекции в потоке цикла событий для последнего снимка, мкс.
+     */
+    public long getLastCaptureMicros() {
+        return lastCaptureMicros;
+    }
+
+    public long getLastSize() {
+        return lastSize;
+    }
+
+    /**
+     * @return Текстовое описание текущего и последнего снимка для консоли сервера.
+     */
+    public String getStatus() {
+        StringBuilder sb = new StringBuilder();
+        if (running.get()) {
+            long done = written.get();
+            long all = total;
+            sb.append("Снимок записывается: ").append(done).append(" из ").append(all)
+                    .append(all > 0 ? String.format(" (%.1f%%)", 100.0 * done / all) : "")
+                    .append(", прошло ").append(System.currentTimeMillis() - startedAt).append(" мс.");
+        } else {
+            sb.append("Снимок сейчас не записывается.");
+        }
+        if (lastCompletedAt > 0) {
+            sb.append("\nПоследний снимок: ").append(TIME_FORMATTER.format(Instant.ofEpochMilli(lastCompletedAt)))
+                    .append(lastSucceeded ? ", успешно" : ", с ошибкой")
+                    .append(", элементов ").append(lastSize)
+                    .append(", фиксация ").append(lastCaptureMicros).append(" мкс")
+                    .append(", запись ").append(lastDurationMs).append(" мс.");
+        }
+        if (journal != null) {
+            sb.append("\nЗаписей журнала после снимка: ").append(journal.getRecordsSinceCheckpoint()).append('.');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ru.ifmo.lab6.server.persistence;
+
+import ru.ifmo.lab6.model.Person;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.function.LongConsumer;
+
+/**
+ * Хранилище снимков коллекции в файле определенного формата.
+ */
+public interface SnapshotStore {
+
+    /**
+     * @return Путь к файлу снимка.
+     */
+    String getFilePath();
+
+    /**
+     * Загружает коллекцию из снимка.
+     * @return Загруженная коллекция (пустая, если файла нет).
+     */
+    TreeSet<Person> load();
+
+    /**
+     * Надежно сохраняет коллекцию: временный файл, fsync, атомарное переименование.
+     * @param collection Коллекция для сохранения.
+     * @param progress Получает количество уже записанных элементов.
+     * @return true, если сохранение прошло успешно.
+     */
+    boolean save(Collection<Person> collection, LongConsumer progress);
+}
@@ -0,0 +1,230 @@
+package ru.ifmo.lab6.server.replication;
+
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+import ru.ifmo.lab6.server.persistence.PersonCodec;
+import ru.ifmo.lab6.server.persistence.PersonSets;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Сторона реплики в репликации.
+ * <p>
+ * Подключается к основному серверу, получает снимок коллекции и затем читает поток изменений
+ * в отдельном потоке. Прочитанные изменения пачками передаются в поток цикла событий,
+ * где применяются к коллекции, поэтому запросы клиентов видят коллекцию только между пачками.
+ * При разрыве соединения реплика переподключается и заново получает снимок.
+ * Реплика хранит коллекцию только в памяти.
+ */
+public class ReplicaClient implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ReplicaClient.class.getName());
+    private static final int MAX_BATCH = 1024;
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private final InetSocketAddress primary;
+    private volatile Socket socket;
+    private volatile DataInputStream in;
+    private volatile boolean closed;
+    private volatile boolean connected;
+
+    private long bootstrapSequence;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long lastHeartbeatTime;
+    private volatile long lastHeartbeatReceivedAt;
+
+    public ReplicaClient(InetSocketAddress primary) {
+        this.primary = primary;
+    }
+
+    public InetSocketAddress getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Подключается к основному серверу и читает снимок. Повторяет попытки, пока подключение не удастся.
+     * @return Коллекция основного сервера на момент подключения.
+     * @throws InterruptedException если ожидание было прервано.
+     */
+    public TreeSet<Person> bootstrap() throws InterruptedException {
+        TreeSet<Person> collection = connectWithRetry();
+        appliedSequence = bootstrapSequence;
+        return collection;
+    }
+
+    private TreeSet<Person> connectWithRetry() throws InterruptedException {
+        while (!closed) {
+            try {
+                return connect();
+            } catch (IOException e) {
+                LOGGER.warning("Не удалось получить снимок с основного сервера " + primary + ": " + e.getMessage()
+                        + ". Повтор через " + RECONNECT_DELAY_MS + " мс.");
+                disconnect();
+                Thread.sleep(RECONNECT_DELAY_MS);
+            }
+        }
+        throw new InterruptedException("Реплика остановлена.");
+    }
+
+    private TreeSet<Person> connect() throws IOException {
+        long start = System.nanoTime();
+        Socket s = new Socket();
+        socket = s;
+        s.connect(primary, (int) (RECONNECT_DELAY_MS * 5));
+        s.setTcpNoDelay(true);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(s.getInputStream(), ReplicationProtocol.BUFFER_SIZE));
+        if (input.readInt() != ReplicationProtocol.MAGIC || input.readInt() != ReplicationProtocol.VERSION) {
+            throw new IOException("Основной сервер использует несовместимый протокол репликации.");
+        }
+        long sequence = input.readLong();
+        long count = input.readLong();
+        List<Person> persons = new ArrayList<>((int) Math.min(count, 1 << 20));
+        for (long i = 0; i < count; i++) {
+            persons.add(PersonCodec.read(input));
+        }
+        in = input;
+        bootstrapSequence = sequence;
+        connected = true;
+        LOGGER.info("Получен снимок с основного сервера " + primary + " за " + (System.nanoTime() - start) / 1_000_000
+                + " мс: элементов " + count + ", изменение №" + sequence);
+        return PersonSets.fromOrderedParts(List.of(persons));
+    }
+
+    /**
+     * Запускает поток, читающий изменения с основного сервера и применяющий их в цикле событий.
+     * @param collectionManager Менеджер коллекции реплики, созданный из {@link #bootstrap()}.
+     * @param loop Исполнитель задач в потоке цикла событий.
+     */
+    public void startTailing(CollectionManager collectionManager, Executor loop) {
+        Thread reader = new Thread(() -> tail(collectionManager, loop), "replication-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void tail(CollectionManager collectionManager, Executor loop) {
+        while (!closed) {
+            try {
+                readChanges(collectionManager, loop);
+            } catch (IOException e) {
+                if (closed) return;
+                LOGGER.warning("Соединение с основным сервером " + primary + " потеряно: " + e.getMessage());
+            }
+            connected = false;
+            disconnect();
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+                TreeSet<Person> collection = connectWithRetry();
+                long sequence = bootstrapSequence;
+                loop.execute(() -> {
+                    collectionManager.replaceCollection(collection, loop);
+                    appliedSequence = sequence;
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void readChanges(CollectionManager collectionManager, Executor loop) throws IOException {
+        DataInputStream input = in;
+        List<Object> batch = new ArrayList<>();
+        while (!closed) {
+            byte op = input.readByte();
+            switch (op) {
+                case ReplicationProtocol.OP_PUT:
+                    batch.add(PersonCodec.read(input));
+                    break;
+                case ReplicationProtocol.OP_REMOVE:
+                    batch.add(input.readLong());
+                    break;
+                case ReplicationProtocol.OP_CLEAR:
+                    batch.add(ReplicationProtocol.OP_CLEAR);
+                    break;
+                case ReplicationProtocol.OP_HEARTBEAT:
+                    batch.add(new long[]{input.readLong(), input.readLong()});
+                    break;
+                default:
+                    throw new IOException("Неизвестный тип записи в потоке репликации: " + op);
+            }
+            if (batch.size() >= MAX_BATCH || input.available() == 0) {
+                List<Object> ready = batch;
+                loop.execute(() -> apply(collectionManager, ready));
+                batch = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Применяет пачку изменений. Выполняется в потоке цикла событий.
+     */
+    private void apply(CollectionManager collectionManager, List<Object> batch) {
+        long applied = appliedSequence;
+        for (Object change : batch) {
+            if (change instanceof Person person) {
+                collectionManager.applyPut(person);
+                applied++;
+            } else if (change instanceof Long id) {
+                collectionManager.applyRemove(id);
+                applied++;
+            } else if (change instanceof Byte) {
+                collectionManager.clear();
+                applied++;
+            } else if (change instanceof long[] heartbeat) {
+                primarySequence = heartbeat[0];
+                lastHeartbeatTime = heartbeat[1];
+                lastHeartbeatReceivedAt = System.currentTimeMillis();
+            }
+        }
+        appliedSequence = applied;
+    }
+
+    /**
+     * @return Количество изменений основного сервера, еще не примененных репликой (по последнему контрольному сигналу).
+     */
+    public long getLagChanges() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * @return Описание состояния репликации для команды info и консоли.
+     */
+    public String getStatus() {
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder("Реплика сервера ").append(primary.getHostString()).append(':').append(primary.getPort())
+                .append(connected ? " (подключена)" : " (нет связи, переподключение)")
+                .append(", применено изменений №").append(appliedSequence)
+                .append(", отставание ").append(getLagChanges()).append(" изм.");
+        if (lastHeartbeatReceivedAt > 0) {
+            sb.append(", сигнал основного сервера ").append(now - lastHeartbeatTime).append(" мс назад");
+        }
+        return sb.toString();
+    }
+
+    private void disconnect() {
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                LOGGER.fine("Ошибка при закрытии соединения с основным сервером: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        disconnect();
+    }
+}
@@ -0,0 +1,26 @@
+package ru.ifmo.lab6.server.replication;
+
+/**
+ * Константы протокола репликации.
+ * <p>
+ * Основной сервер передает реплике по TCP: сигнатуру и версию, номер изменения, на котором
+ * зафиксирован снимок, количество элементов и сами элементы ({@link ru.ifmo.lab6.server.persistence.PersonCodec}),
+ * а затем бесконечный поток кадров: изменения коллекции в порядке их выполнения и периодические
+ * контрольные сигналы с текущим номером изменения и временем основного сервера.
+ */
+final class ReplicationProtocol {
+    static final int MAGIC = 0x4C365250; // "L6RP"
+    static final int VERSION = 1;
+
+    static final byte OP_PUT = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_CLEAR = 3;
+    static final byte OP_HEARTBEAT = 4;
+
+    static final long HEARTBEAT_INTERVAL_MS = 1000;
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private ReplicationProtocol() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+}
@@ -0,0 +1,251 @@
+package ru.ifmo.lab6.server.replication;
+
+import ru.ifmo.lab6.model.Person;
+import ru.ifmo.lab6.server.managers.CollectionListener;
+import ru.ifmo.lab6.server.managers.CollectionManager;
+import ru.ifmo.lab6.server.persistence.PersonCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Сторона основного сервера в репликации.
+ * <p>
+ * Принимает TCP-подключения реплик. Для каждой реплики в потоке цикла событий фиксируется снимок коллекции
+ * и одновременно подписывается слушатель изменений, поэтому каждое изменение после снимка попадает
+ * в очередь реплики ровно один раз. Снимок и изменения отправляются отдельным потоком, цикл событий
+ * только кладет ссылки в очередь. Если реплика не успевает и очередь превышает предел,
+ * соединение разрывается: реплика подключится заново и получит свежий снимок.
+ */
+public class ReplicationServer implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ReplicationServer.class.getName());
+
+    private final CollectionManager collectionManager;
+    private final Executor loop;
+    private final int maxBacklog;
+    private final ServerSocket serverSocket;
+    private final List<ReplicaSession> sessions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger sessionNumber = new AtomicInteger();
+
+    /**
+     * @param port Порт для подключения реплик.
+     * @param bindAddress Адрес, на котором принимаются подключения.
+     * @param collectionManager Менеджер коллекции.
+     * @param loop Исполнитель задач в потоке цикла событий.
+     * @param maxBacklog Максимальное количество неотправленных изменений на одну реплику.
+     * @throws IOException если порт не удалось открыть.
+     */
+    public ReplicationServer(int port, String bindAddress, CollectionManager collectionManager,
+                             Executor loop, int maxBacklog) throws IOException {
+        this.collectionManager = collectionManager;
+        this.loop = loop;
+        this.maxBacklog = maxBacklog;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("Репликация: ожидание подключений реплик на " + serverSocket.getLocalSocketAddress());
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                loop.execute(() -> attach(socket));
+            } catch (SocketException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "Ошибка при приеме подключения реплики", e);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Ошибка при приеме подключения реплики", e);
+            }
+        }
+    }
+
+    /**
+     * Фиксирует снимок и подписывает реплику на изменения. Выполняется в потоке цикла событий.
+     */
+    private void attach(Socket socket) {
+        long sequence = collectionManager.getModificationCount();
+        List<Person> snapshot = collectionManager.snapshot();
+        ReplicaSession session = new ReplicaSession(socket, snapshot, sequence, sessionNumber.incrementAndGet());
+        collectionManager.addListener(session);
+        sessions.add(session);
+        session.start();
+        LOGGER.info("Подключена реплика " + socket.getRemoteSocketAddress() + ", снимок: элементов " + snapshot.size()
+                + ", изменение №" + sequence);
+    }
+
+    /**
+     * @return Описание подключенных реплик для консоли сервера.
+     */
+    public String getStatus() {
+        StringBuilder sb = new StringBuilder("Репликация: подключено реплик ").append(sessions.size()).append('.');
+        for (ReplicaSession session : sessions) {
+            sb.append("\n  ").append(session.socket.getRemoteSocketAddress())
+                    .append(": в очереди ").append(session.queue.size())
+                    .append(", отправлено изменений ").append(session.sentSequence);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (ReplicaSession session : sessions) {
+            session.disconnect();
+        }
+    }
+
+    /**
+     * Изменение, ожидающее отправки реплике.
+     */
+    private static final class Change {
+        static final Change CLEAR = new Change(ReplicationProtocol.OP_CLEAR, null, 0);
+
+        final byte op;
+        final Person person;
+        final long id;
+
+        Change(byte op, Person person, long id) {
+            this.op = op;
+            this.person = person;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Соединение с одной репликой.
+     */
+    private final class ReplicaSession implements CollectionListener {
+        private final Socket socket;
+        private final List<Person> snapshot;
+        private final LinkedBlockingQueue<Change> queue = new LinkedBlockingQueue<>();
+        private final Thread sender;
+        private volatile long sentSequence;
+        private volatile boolean detached;
+
+        ReplicaSession(Socket socket, List<Person> snapshot, long sequence, int number) {
+            this.socket = socket;
+            this.snapshot = snapshot;
+            this.sentSequence = sequence;
+            this.sender = new Thread(this::send, "replication-sender-" + number);
+            this.sender.setDaemon(true);
+        }
+
+        void start() {
+            sender.start();
+        }
+
+        @Override
+        public void onPut(Person person) {
+            enqueue(new Change(ReplicationProtocol.OP_PUT, person, person.getId()));
+        }
+
+        @Override
+        public void onRemove(long id) {
+            enqueue(new Change(ReplicationProtocol.OP_REMOVE, null, id));
+        }
+
+        @Override
+        public void onClear() {
+            enqueue(Change.CLEAR);
+        }
+
+        private void enqueue(Change change) {
+            if (detached) return;
+            queue.add(change);
+            if (queue.size() > maxBacklog) {
+                LOGGER.warning("Реплика " + socket.getRemoteSocketAddress() + " отстала более чем на " + maxBacklog
+                        + " изменений и будет отключена.");
+                disconnect();
+            }
+        }
+
+        private void send() {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), ReplicationProtocol.BUFFER_SIZE))) {
+                out.writeInt(ReplicationProtocol.MAGIC);
+                out.writeInt(ReplicationProtocol.VERSION);
+                out.writeLong(sentSequence);
+                out.writeLong(snapshot.size());
+                for (Person person : snapshot) {
+                    PersonCodec.write(out, person);
+                }
+                writeHeartbeat(out);
+                out.flush();
+
+                long lastHeartbeat = System.currentTimeMillis();
+                while (!detached) {
+                    Change change = queue.poll(ReplicationProtocol.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (change != null) {
+                        writeChange(out, change);
+                        sentSequence++;
+                    }
+                    long now = System.currentTimeMillis();
+                    if (change == null || now - lastHeartbeat >= ReplicationProtocol.HEARTBEAT_INTERVAL_MS) {
+                        writeHeartbeat(out);
+                        lastHeartbeat = now;
+                    }
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                if (!detached) {
+                    LOGGER.info("Реплика " + socket.getRemoteSocketAddress() + " отключилась: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void writeChange(DataOutputStream out, Change change) throws IOException {
+            out.writeByte(change.op);
+            if (change.op == ReplicationProtocol.OP_PUT) {
+                PersonCodec.write(out, change.person);
+            } else if (change.op == ReplicationProtocol.OP_REMOVE) {
+                out.writeLong(change.id);
+            }
+        }
+
+        private void writeHeartbeat(DataOutputStream out) throws IOException {
+            out.writeByte(ReplicationProtocol.OP_HEARTBEAT);
+            out.writeLong(collectionManager.getModificationCount());
+            out.writeLong(System.currentTimeMillis());
+        }
+
+        void disconnect() {
+            if (detached) return;
+            detached = true;
+            collectionManager.removeListener(this);
+            sessions.remove(this);
+            queue.clear();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOGGER.fine("Ошибка при закрытии соединения с репликой: " + e.getMessage());
+            }
+        }
+    }
+}
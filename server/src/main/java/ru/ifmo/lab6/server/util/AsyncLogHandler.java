@@ -0,0 +1,138 @@
+package ru.ifmo.lab6.server.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Обработчик журнала, передающий записи другим обработчикам (файлу, консоли) в фоновом потоке.
+ * <p>
+ * Поток, вызвавший логгер (например, цикл событий), только кладет запись в ограниченную очередь
+ * (кольцевой буфер {@link ArrayBlockingQueue}); форматирование и ввод-вывод выполняет поток
+ * {@code log-writer}, который забирает записи пачками. При переполнении очереди записи ниже
+ * {@link Level#WARNING} в режиме {@link OverflowPolicy#DROP} отбрасываются (число пропущенных
+ * сообщается отдельной записью), а в режиме {@link OverflowPolicy#BLOCK} вызывающий поток ждет
+ * освобождения места. Предупреждения и ошибки никогда не отбрасываются.
+ */
+public class AsyncLogHandler extends Handler {
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Поведение при переполнении очереди.
+     */
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    private final Handler[] targets;
+    private final ArrayBlockingQueue<LogRecord> queue;
+    private final OverflowPolicy policy;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity Размер очереди записей.
+     * @param policy Поведение при переполнении очереди.
+     * @param targets Обработчики, которым передаются записи.
+     */
+    public AsyncLogHandler(int capacity, OverflowPolicy policy, Handler... targets) {
+        this.targets = targets.clone();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.policy = policy;
+        setLevel(Level.ALL);
+        writer = new Thread(this::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        // Класс и метод источника определяются по стеку вызывающего потока, поэтому до передачи в другой поток.
+        record.getSourceClassName();
+        if (queue.offer(record)) return;
+        if (policy == OverflowPolicy.DROP && record.getLevel().intValue() < Level.WARNING.intValue()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeLoop() {
+        List<LogRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                LogRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void write(List<LogRecord> batch) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            LogRecord notice = new LogRecord(Level.WARNING, "Журнал не успевал за сообщениями: пропущено " + lost + ".");
+            notice.setLoggerName(AsyncLogHandler.class.getName());
+            notice.setSourceClassName(AsyncLogHandler.class.getName());
+            notice.setSourceMethodName("publish");
+            publishToTargets(notice);
+        }
+        for (LogRecord record : batch) {
+            publishToTargets(record);
+        }
+    }
+
+    private void publishToTargets(LogRecord record) {
+        for (Handler target : targets) {
+            try {
+                target.publish(record);
+            } catch (RuntimeException e) {
+                reportError("Ошибка при записи журнала", e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (Handler target : targets) {
+            target.flush();
+        }
+    }
+
+    /**
+     * Дожидается записи накопленных сообщений и закрывает обработчики.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Handler target : targets) {
+            target.close();
+        }
+    }
+}
@@ -5,15 +5,25 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import java.util.logging.ConsoleHandler;
 /**
  * Утилитарный класс для централизованной настройки глобального логгера приложения.
  * Гарантирует, что все сообщения будут записываться в указанный файл в простом текстовом формате.
+ * По умолчанию файл и консоль пишутся асинхронно ({@link AsyncLogHandler}); параметры
+ * {@code lab6.log.async}, {@code lab6.log.bufferSize}, {@code lab6.log.overflow} и {@code lab6.log.level}.
  */
 public final class LoggerSetup {
+    private static final boolean ASYNC = ServerConfig.getBoolean("lab6.log.async", true);
+    private static final int BUFFER_SIZE = ServerConfig.getInt("lab6.log.bufferSize", 8192);
+    private static final AsyncLogHandler.OverflowPolicy OVERFLOW =
+            "block".equalsIgnoreCase(ServerConfig.getString("lab6.log.overflow", "drop"))
+                    ? AsyncLogHandler.OverflowPolicy.BLOCK : AsyncLogHandler.OverflowPolicy.DROP;
+    private static final Level LEVEL = parseLevel(ServerConfig.getString("lab6.log.level", "INFO"));
 
     /**
      * Приватный конструктор, чтобы предотвратить создание экземпляров этого утилитарного класса.
@@ -54,15 +64,20 @@ public final class LoggerSetup {
             SimpleFormatter formatter = new SimpleFormatter();
             fileHandler.setFormatter(formatter);
 
-            // Добавляем наш файловый обработчик к корневому логгеру.
-            rootLogger.addHandler(fileHandler);
-
             ConsoleHandler consoleHandler = new ConsoleHandler();
             consoleHandler.setFormatter(new SimpleFormatter());
-            rootLogger.addHandler(consoleHandler);
 
-            // Устанавливаем уровень логирования. INFO и выше (WARNING, SEVERE) будут записаны.
-            rootLogger.setLevel(Level.INFO);
+            if (ASYNC) {
+                // Файл и консоль пишет фоновый поток, цикл событий только кладет запись в очередь.
+                rootLogger.addHandler(new AsyncLogHandler(BUFFER_SIZE, OVERFLOW, fileHandler, consoleHandler));
+            } else {
+                // Добавляем наш файловый обработчик к корневому логгеру.
+                rootLogger.addHandler(fileHandler);
+                rootLogger.addHandler(consoleHandler);
+            }
+
+            // Устанавливаем уровень логирования. По умолчанию INFO и выше (WARNING, SEVERE) будут записаны.
+            rootLogger.setLevel(LEVEL);
 
         } catch (IOException e) {
             // Если настройка логгера провалилась, это критическая ошибка конфигурации.
@@ -71,4 +86,44 @@ public final class LoggerSetup {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Настраивает отдельный логгер для журнала медленных запросов: одна строка на запрос с датой и временем,
+     * без вывода в консоль и в основной файл журнала. Запись асинхронная, если включен {@code lab6.log.async}.
+     *
+     * @param fileName Имя файла журнала медленных запросов (например, "slow.log").
+     * @return Логгер или null, если файл не удалось открыть.
+     */
+    public static Logger setupSlowLog(final String fileName) {
+        try {
+            Path logFilePath = Paths.get(fileName);
+            if (logFilePath.getParent() != null) {
+                Files.createDirectories(logFilePath.getParent());
+            }
+            FileHandler fileHandler = new FileHandler(fileName, true);
+            fileHandler.setFormatter(new Formatter() {
+                @Override
+                public String format(LogRecord record) {
+                    return String.format("%1$tF %1$tT.%1$tL %2$s%n", record.getMillis(), formatMessage(record));
+                }
+            });
+            Logger slowLogger = Logger.getLogger("ru.ifmo.lab6.slow");
+            slowLogger.setUseParentHandlers(false);
+            slowLogger.addHandler(ASYNC ? new AsyncLogHandler(BUFFER_SIZE, OVERFLOW, fileHandler) : fileHandler);
+            slowLogger.setLevel(Level.INFO);
+            return slowLogger;
+        } catch (IOException e) {
+            System.err.println("Не удалось открыть журнал медленных запросов " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Level parseLevel(String name) {
+        try {
+            return Level.parse(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Некорректный уровень журнала lab6.log.level='" + name + "'. Используется INFO.");
+            return Level.INFO;
+        }
+    }
 }
\ No newline at end of file
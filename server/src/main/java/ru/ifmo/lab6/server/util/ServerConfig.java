@@ -0,0 +1,41 @@
+package ru.ifmo.lab6.server.util;
+
+import java.util.logging.Logger;
+
+/**
+ * Утилитарный класс для чтения необязательных параметров сервера.
+ * Параметры задаются системными свойствами JVM, например {@code -Dlab6.load.parallel=true}.
+ * Некорректное значение не роняет сервер: пишется предупреждение и берется значение по умолчанию.
+ */
+public final class ServerConfig {
+    private static final Logger LOGGER = Logger.getLogger(ServerConfig.class.getName());
+
+    private ServerConfig() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Некорректное значение параметра " + key + "='" + value + "'. Используется " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}